@@ -6,6 +6,7 @@ package steiner;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import utils.Utils;
+import utils.graphextensions.CompactGraph;
 
 import java.util.Set;
 import java.util.concurrent.*;
@@ -18,12 +19,40 @@ public abstract class SteinerAlgorithm {
     // the given graph and terminals to calculate a steiner tree on
     protected final SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph;
     protected final Set<Integer> terminals;
+    // primitive (CSR) representation of the same graph for hot paths, built on first use
+    private CompactGraph compactGraph;
 
     protected SteinerAlgorithm(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
         this.graph = graph;
         this.terminals = terminals;
     }
 
+    /**
+     * use an already built compact representation of the graph instead of building a new one
+     *
+     * @param compactGraph compact graph, its JGraphT view must be the graph of this algorithm
+     * @return this algorithm
+     */
+    public final SteinerAlgorithm withCompactGraph(CompactGraph compactGraph) {
+        if (compactGraph.asGraph() != this.graph) {
+            throw new IllegalArgumentException("compact graph does not represent the graph of the algorithm");
+        }
+        synchronized (this) {
+            this.compactGraph = compactGraph;
+        }
+        return this;
+    }
+
+    /**
+     * @return compact representation of the graph (see CompactGraph)
+     */
+    protected final synchronized CompactGraph getCompactGraph() {
+        if (compactGraph == null) {
+            compactGraph = CompactGraph.of(this.graph);
+        }
+        return compactGraph;
+    }
+
     /**
      * run the instance of the algorithm with its parameters
      *
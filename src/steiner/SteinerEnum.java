@@ -5,9 +5,12 @@ import org.jgrapht.graph.SimpleWeightedGraph;
 import steiner.approx.TwoApproximation;
 import steiner.approx.Zelikovsky_11_6;
 import steiner.exact.DreyfusWagner;
+import steiner.exact.EricksonMonmaVeinott;
 import steiner.localsearch.FastLocalSearch;
 import steiner.localsearch.HybridGRASP;
 import steiner.localsearch.constructionmethods.*;
+import utils.Utils;
+import utils.graphextensions.CompactGraph;
 
 import java.util.Set;
 
@@ -29,6 +32,13 @@ public enum SteinerEnum {
         }
     },
 
+    TWO_APPROXIMATION_MEHLHORN(true) {
+        @Override
+        public SteinerAlgorithm getInstance(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
+            return new TwoApproximation(graph, terminals, TwoApproximation.Variant.MEHLHORN);
+        }
+    },
+
     ZELIKOVSKY(false) {
         @Override
         public SteinerAlgorithm getInstance(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
@@ -78,6 +88,14 @@ public enum SteinerEnum {
         }
     },
 
+    // GRASP iterations in parallel, using Utils.threads threads
+    HYBRID_GRASP_WITH_PERTURBATIONS_PARALLEL(false) {
+        @Override
+        public SteinerAlgorithm getInstance(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
+            return new HybridGRASP(graph, terminals, Utils.threads);
+        }
+    },
+
     /**
      * Construction methods used in GRASP
      */
@@ -103,6 +121,14 @@ public enum SteinerEnum {
         }
     },
 
+    // shortest path heuristic from Utils.sphRoots roots (0: every terminal) on Utils.threads threads
+    MULTI_ROOT_SHORTEST_PATH_CONSTRUCTION(false) {
+        @Override
+        public SteinerAlgorithm getInstance(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
+            return new ConstructionAlgorithmAdapter(graph, terminals, new MultiRootShortestPathHeuristic());
+        }
+    },
+
     TWO_APPROX_CONSTRUCTION(false) {
         @Override
         public SteinerAlgorithm getInstance(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
@@ -113,13 +139,29 @@ public enum SteinerEnum {
     /**
      * Exact algorithms
      */
-    // too slow for comparative tests (result is the known optimum for any graph anyway since it's an exact algorithm)
-    DREYFUS_WAGNER(false, false) {
+    // exponential in the number of terminals, only usable up to ~18 terminals (not in comparative tests)
+    DREYFUS_WAGNER(false) {
         @Override
         public SteinerAlgorithm getInstance
                 (SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
             return new DreyfusWagner(graph, terminals);
         }
+    },
+
+    // subsets with the same number of terminals in parallel, using Utils.threads threads
+    DREYFUS_WAGNER_PARALLEL(false) {
+        @Override
+        public SteinerAlgorithm getInstance(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
+            return new DreyfusWagner(graph, terminals, Utils.threads);
+        }
+    },
+
+    // no all pairs shortest paths, exponential in the number of terminals only (large graphs with few terminals)
+    ERICKSON_MONMA_VEINOTT(false) {
+        @Override
+        public SteinerAlgorithm getInstance(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
+            return new EricksonMonmaVeinott(graph, terminals);
+        }
     };
 
     private final boolean useInTest;
@@ -137,6 +179,17 @@ public enum SteinerEnum {
 
     public abstract SteinerAlgorithm getInstance(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals);
 
+    /**
+     * get instance that shares an already built compact graph (the algorithm works on its JGraphT view)
+     *
+     * @param graph     compact graph
+     * @param terminals terminals
+     * @return algorithm instance
+     */
+    public SteinerAlgorithm getInstance(CompactGraph graph, Set<Integer> terminals) {
+        return getInstance(graph.asGraph(), terminals).withCompactGraph(graph);
+    }
+
     public boolean useInTest() {
         return this.useInTest;
     }
@@ -5,6 +5,8 @@ import org.jgrapht.graph.SimpleWeightedGraph;
 
 /**
  * record class containing results from running an algorithm on a problem graph
+ * the solution and its weight are read and updated under the lock of the result,
+ * so parallel algorithms can call updateIfBetter concurrently
  */
 public class SteinerResult {
 
@@ -29,26 +31,26 @@ public class SteinerResult {
      * @param smt    solution to update result with
      * @param weight weight of smt solution
      */
-    public void updateIfBetter(SimpleWeightedGraph<Integer, DefaultWeightedEdge> smt, double weight) {
+    public synchronized void updateIfBetter(SimpleWeightedGraph<Integer, DefaultWeightedEdge> smt, double weight) {
         if (weight < this.weight) {
             this.smt = smt;
             this.weight = weight;
         }
     }
 
-    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> getSmt() {
+    public synchronized SimpleWeightedGraph<Integer, DefaultWeightedEdge> getSmt() {
         return smt;
     }
 
-    public void setSmt(SimpleWeightedGraph<Integer, DefaultWeightedEdge> smt) {
+    public synchronized void setSmt(SimpleWeightedGraph<Integer, DefaultWeightedEdge> smt) {
         this.smt = smt;
     }
 
-    public double getWeight() {
+    public synchronized double getWeight() {
         return weight;
     }
 
-    public void setWeight(double weight) {
+    public synchronized void setWeight(double weight) {
         this.weight = weight;
     }
 
@@ -80,7 +82,7 @@ public class SteinerResult {
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return "SteinerResult{" +
                 "weight=" + weight +
                 ", smt=" + smt +
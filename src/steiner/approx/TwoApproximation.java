@@ -2,37 +2,66 @@ package steiner.approx;
 
 import org.jgrapht.alg.interfaces.ShortestPathAlgorithm;
 import org.jgrapht.alg.interfaces.SpanningTreeAlgorithm.SpanningTree;
-import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import steiner.SteinerAlgorithm;
 import steiner.SteinerResult;
-import utils.graphextensions.ClosureWeightedEdge;
-import utils.graphextensions.GraphUtils;
+import utils.Utils;
+import utils.graphextensions.*;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
 
 /**
  * 2-approximation steiner tree problem algorithm
  * based on "A faster approximation algorithm for the Steiner problem in graphs, Y. F. Wu, P. Widmayer, C. K. Wong"
  * *        DOI: 10.1007/bf00289500
+ * MEHLHORN variant based on "A faster approximation algorithm for the Steiner problem in graphs, K. Mehlhorn"
+ * *        DOI: 10.1016/0020-0190(88)90066-X
+ * *        the metric closure is replaced by the voronoi regions of the terminals (one multi-source dijkstra),
+ * *        the MST is taken over the boundary edges, O(m log n) in total with the same approximation ratio
  */
 public class TwoApproximation extends SteinerAlgorithm {
 
+    public enum Variant {
+        METRIC_CLOSURE,
+        MEHLHORN
+    }
 
-    private final ShortestPathAlgorithm<Integer, DefaultWeightedEdge> paths;
+    private ShortestPathAlgorithm<Integer, DefaultWeightedEdge> paths;
+    private final Variant variant;
 
+    /**
+     * the terminal shortest path trees are computed on the compact graph when the instance is run
+     */
     public TwoApproximation(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
-        this(graph, terminals, new DijkstraShortestPath<>(graph));
+        this(graph, terminals, (ShortestPathAlgorithm<Integer, DefaultWeightedEdge>) null);
     }
 
     public TwoApproximation(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals, ShortestPathAlgorithm<Integer, DefaultWeightedEdge> paths) {
         super(graph, terminals);
         this.paths = paths;
+        this.variant = Variant.METRIC_CLOSURE;
+    }
+
+    public TwoApproximation(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals, Variant variant) {
+        super(graph, terminals);
+        this.variant = variant;
     }
 
     @Override
     public SteinerResult runInstance(SteinerResult result) throws InterruptedException {
+        if (this.variant == Variant.MEHLHORN) {
+            SimpleWeightedGraph<Integer, DefaultWeightedEdge> treeGraph = mehlhorn();
+            result.setSmt(treeGraph);
+            result.setWeight(GraphUtils.getWeight(treeGraph));
+            return result;
+        }
+        if (this.paths == null) {
+            this.paths = new DistanceOracle(getCompactGraph(), this.terminals);
+        }
 
         // * compute 'metric closure' / 'distance graph' of G => G1
         //      (complete subgraph containing all terminals where the edge weights represent the shortest path in G)
@@ -68,4 +97,61 @@ public class TwoApproximation extends SteinerAlgorithm {
         result.setWeight(GraphUtils.getWeight(treeGraph));
         return result;
     }
+
+    /**
+     * * compute the voronoi regions of the terminals (multi-source dijkstra) => shortest path forest
+     * * every edge (u, v) between two regions is a boundary edge of weight d(base(u), u) + w(u, v) + d(v, base(v))
+     * * kruskal over the boundary edges, joining regions => MST of the distance network of the terminals
+     * * every chosen boundary edge is replaced by the path base(u) ~> u - v ~> base(v) in the forest
+     * the paths are part of the shortest path forest and the chosen edges connect the regions without cycles,
+     * so the result is a tree whose leaves are terminals
+     *
+     * @return steiner tree
+     */
+    private SimpleWeightedGraph<Integer, DefaultWeightedEdge> mehlhorn() throws InterruptedException {
+        CompactGraph compact = getCompactGraph();
+        int[] sources = this.terminals.stream().mapToInt(compact::indexOf).toArray();
+        MultiSourceDijkstra voronoi = new MultiSourceDijkstra(compact);
+        voronoi.run(sources);
+        Utils.notInterrupted();
+
+        // boundary edges, sorted by their distance network weight (ties by edge id)
+        int m = compact.edgeCount();
+        double[] key = new double[m];
+        List<Integer> boundary = new ArrayList<>();
+        for (int e = 0; e < m; e++) {
+            int u = compact.edgeSource(e);
+            int v = compact.edgeTarget(e);
+            if (voronoi.base(u) >= 0 && voronoi.base(v) >= 0 && voronoi.base(u) != voronoi.base(v)) {
+                key[e] = voronoi.distance(u) + compact.edgeWeight(e) + voronoi.distance(v);
+                boundary.add(e);
+            }
+        }
+        boundary.sort(Comparator.<Integer>comparingDouble(e -> key[e]).thenComparingInt(e -> e));
+        Utils.notInterrupted();
+
+        IntUnionFind regions = new IntUnionFind(compact.vertexCount());
+        boolean[] inTree = new boolean[m];
+        int[] edges = new int[compact.vertexCount()];
+        int edgeCount = 0;
+        for (int e : boundary) {
+            int u = compact.edgeSource(e);
+            int v = compact.edgeTarget(e);
+            if (!regions.union(voronoi.base(u), voronoi.base(v))) continue;
+            inTree[e] = true;
+            edges[edgeCount++] = e;
+            // paths back to the bases, stop as soon as the rest of the path is in the tree already
+            for (int x : new int[]{u, v}) {
+                for (int p = voronoi.pred(x); p >= 0 && !inTree[p]; p = voronoi.pred(x)) {
+                    inTree[p] = true;
+                    edges[edgeCount++] = p;
+                    x = compact.opposite(p, x);
+                }
+            }
+        }
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> treeGraph = compact.getGraphFromEdges(edges, edgeCount);
+        // a single terminal has no edges
+        this.terminals.forEach(treeGraph::addVertex);
+        return treeGraph;
+    }
 }
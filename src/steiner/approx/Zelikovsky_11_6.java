@@ -1,6 +1,5 @@
 package steiner.approx;
 
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
 import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
@@ -8,6 +7,7 @@ import steiner.SteinerAlgorithm;
 import steiner.SteinerResult;
 import utils.Utils;
 import utils.graphextensions.ClosureWeightedEdge;
+import utils.graphextensions.DistanceOracle;
 import utils.graphextensions.GraphUtils;
 import utils.setutils.PowerSet;
 
@@ -37,7 +37,7 @@ public class Zelikovsky_11_6 extends SteinerAlgorithm {
 
     @Override
     public SteinerResult runInstance(SteinerResult result) throws InterruptedException {
-        FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> paths = GraphUtils.getShortestPaths(this.graph);
+        DistanceOracle paths = GraphUtils.getShortestPaths(this.graph, this.terminals);
         SimpleWeightedGraph<Integer, ClosureWeightedEdge> graphF = GraphUtils.getMetricClosure(
                 this.graph,
                 this.terminals,
@@ -54,7 +54,7 @@ public class Zelikovsky_11_6 extends SteinerAlgorithm {
                 Utils.notInterrupted();
                 int sum = 0;
                 for (Integer s : setZ) {
-                    sum += paths.getPathWeight(v, s);
+                    sum += paths.getPathWeight(s, v);
                 }
                 if (sum < minD) {
                     minD = sum;
@@ -1,86 +1,287 @@
 package steiner.exact;
 
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
-import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import steiner.SteinerAlgorithm;
 import steiner.SteinerResult;
 import utils.Utils;
+import utils.graphextensions.CompactGraph;
+import utils.graphextensions.DistanceOracle;
 import utils.graphextensions.GraphUtils;
-import utils.setutils.PowerSet;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * exact algorithm by Dreyfus & Wagner
  * construct the smt bottom-up by constructing all possible subtrees using dynamic programming
- * !this needs a table of exponential size, as the table holds all subsets of the terminals
+ * * one terminal q is the root, the other k-1 terminals are the bits of a subset mask
+ * * table[mask * n + v] = weight of the smallest tree connecting the terminals in mask and vertex v
+ * *        - single terminal t: shortest path from t to v
+ * *        - otherwise: min over j of dist(v, j) + (min over splits e of mask: table[e][j] + table[mask \ e][j])
+ * * the join vertex j and the split e are stored as back-pointers, the tree is reconstructed from
+ * *        table[all terminals][q] by following them and replacing each (v, j) by its shortest path
+ * * with more than 1 thread, the subsets with the same number of terminals are computed in parallel
+ * !this needs a table of exponential size, as the table holds all subsets of the terminals (2^(k-1) * n entries)
+ * !every subset reads the distances between all vertices, so n * n distances are kept as well
  */
 public class DreyfusWagner extends SteinerAlgorithm {
 
+    // number of threads the subset layers are computed with (1: sequential)
+    private final int threads;
+
     public DreyfusWagner(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
+        this(graph, terminals, 1);
+    }
+
+    /**
+     * @param threads number of threads to compute each layer of subsets with (1: sequential)
+     */
+    public DreyfusWagner(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals, int threads) {
         super(graph, terminals);
+        this.threads = threads;
     }
 
     @Override
     public SteinerResult runInstance(SteinerResult result) throws InterruptedException {
         // prep
-        Set<Integer> vertices = this.graph.vertexSet();
-        HashMap<Pair<Set<Integer>, Integer>, Double> stmap = new HashMap<>();
-        Set<Integer> c = new HashSet<>(this.terminals);
-        Integer q = Utils.getRandomSetElement(c);
+        CompactGraph compact = getCompactGraph();
+        int n = compact.vertexCount();
+        List<Integer> c = new ArrayList<>(this.terminals);
+        Integer q = Utils.getRandomSetElement(this.terminals, new Random());
+        if (q == null) {
+            result.setSmt(new SimpleWeightedGraph<>(DefaultWeightedEdge.class));
+            result.setWeight(0d);
+            return result;
+        }
         c.remove(q);
-        // shortest paths
-        FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> shortestPaths = GraphUtils.getShortestPaths(this.graph);
+        int k = c.size();
+        // table (double) and back-pointers (2 * int) per entry, plus the n * n distances kept below
+        if (k >= Integer.SIZE - 1 || (1L << k) * n > Integer.MAX_VALUE - 8
+                || (1L << k) * n * (Double.BYTES + 2 * Integer.BYTES) + (long) n * n * Double.BYTES
+                > Runtime.getRuntime().maxMemory()) {
+            throw new IllegalStateException("too many terminals for the dynamic programming table: " + (k + 1));
+        }
+        int full = (1 << k) - 1;
+
+        // shortest paths (every subset reads the rows of all vertices, so all n rows are kept here)
+        DistanceOracle shortestPaths = new DistanceOracle(compact, this.terminals);
+        double[][] dist = new double[n][];
+        for (int v = 0; v < n; v++) {
+            Utils.notInterrupted();
+            dist[v] = shortestPaths.getDistances(compact.vertexId(v));
+        }
+
+        double[] table = new double[(full + 1) * n];
+        // back-pointers: join vertex of (mask, v) and split of mask at the join vertex j (0 for single terminals)
+        int[] join = new int[(full + 1) * n];
+        int[] split = new int[(full + 1) * n];
+
         /* precompute single element results */
-        for (Integer t : c) {
-            for (Integer j : vertices) {
-                stmap.put(new Pair<>(Set.of(t), j), shortestPaths.getPathWeight(t, j));
+        for (int t = 0; t < k; t++) {
+            int mask = 1 << t;
+            double[] row = dist[shortestPaths.indexOf(c.get(t))];
+            System.arraycopy(row, 0, table, mask * n, n);
+        }
+        /* for all subsets (mask) of terminals, every proper subset has a smaller mask */
+        if (threads <= 1) {
+            double[] u = new double[n];
+            int[] uSplit = new int[n];
+            for (int mask = 1; mask <= full; mask++) {
+                if (Integer.bitCount(mask) < 2) continue;
+                Utils.notInterrupted();
+                computeMask(mask, n, dist, table, join, split, u, uSplit);
             }
+        } else {
+            computeLayersParallel(k, n, dist, table, join, split);
         }
-        PowerSet<Integer> powerSet = new PowerSet<>(c, 2);
-        /* for all subsets (mask) of terminals */
-        while (powerSet.hasNext()) {
-            Set<Integer> d = powerSet.next();
-//            if (d.size() == c.size()) continue;
-            /* for all roots i */
-            for (Integer i : vertices) {
-                stmap.put(new Pair<>(d, i), Double.POSITIVE_INFINITY);
+
+        int root = shortestPaths.indexOf(q);
+        double weight = k == 0 ? 0d : table[full * n + root];
+        if (weight == Double.POSITIVE_INFINITY) {
+            result.setWeight(weight);
+            return result;
+        }
+
+        // reconstruct the tree from the back-pointers
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> union = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+        union.addVertex(q);
+        if (k > 0) {
+            reconstruct(full, root, n, c, join, split, shortestPaths, compact, union);
+        }
+        // overlapping shortest paths of equal weight could close a cycle, the MST of the union removes it
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> smt = union.edgeSet().isEmpty()
+                ? union
+                : GraphUtils.getGraphFromSpanningTree(GraphUtils.getMST(union), union);
+        result.setSmt(smt);
+        result.setWeight(smt.edgeSet().isEmpty() ? 0d : GraphUtils.getWeight(smt));
+        return result;
+    }
+
+    /**
+     * fill the entries of one subset, all its proper subsets must be computed
+     *
+     * @param u      scratch array of size n
+     * @param uSplit scratch array of size n
+     */
+    private static void computeMask(int mask, int n, double[][] dist, double[] table, int[] join, int[] split,
+                                    double[] u, int[] uSplit) {
+        // u[j] = smallest tree connecting mask and j, where j has degree >= 2
+        Arrays.fill(u, Double.POSITIVE_INFINITY);
+        int low = mask & -mask;
+        int rest = mask ^ low;
+        // splits e (containing the lowest terminal, so each split is visited once) and mask \ e
+        for (int sub = (rest - 1) & rest; ; sub = (sub - 1) & rest) {
+            int e = sub | low;
+            int eOffset = e * n;
+            int otherOffset = (mask ^ e) * n;
+            for (int j = 0; j < n; j++) {
+                double value = table[eOffset + j] + table[otherOffset + j];
+                if (value < u[j]) {
+                    u[j] = value;
+                    uSplit[j] = e;
+                }
             }
-            for (Integer j : vertices) {
-                double u = inner(stmap, d, j);
-                for (Integer i : vertices) {
-                    Pair<Set<Integer>, Integer> dI = new Pair<>(d, i);
-                    stmap.put(dI, Math.min(stmap.get(dI), shortestPaths.getPathWeight(i, j) + u));
+            if (sub == 0) break;
+        }
+        /* for all roots i */
+        int offset = mask * n;
+        for (int i = 0; i < n; i++) {
+            double[] row = dist[i];
+            double best = Double.POSITIVE_INFINITY;
+            int bestJ = -1;
+            for (int j = 0; j < n; j++) {
+                double value = row[j] + u[j];
+                if (value < best) {
+                    best = value;
+                    bestJ = j;
                 }
             }
+            table[offset + i] = best;
+            join[offset + i] = bestJ;
         }
-        double v = Double.POSITIVE_INFINITY;
-        for (Integer j : vertices) {
-            double u = inner(stmap, c, j);
-            v = Math.min(v, shortestPaths.getPathWeight(q, j) + u);
+        System.arraycopy(uSplit, 0, split, offset, n);
+    }
+
+    /**
+     * compute the subsets layer by layer (by number of terminals), the subsets of one layer only depend on
+     * smaller layers, so each layer is split over a fork-join pool
+     * every entry is computed by exactly one task in the same way as sequentially, so the result does not depend
+     * on the number of threads or the scheduling
+     */
+    private void computeLayersParallel(int k, int n, double[][] dist, double[] table, int[] join, int[] split)
+            throws InterruptedException {
+        int full = (1 << k) - 1;
+        // masks grouped by number of terminals
+        int[][] layers = new int[k + 1][];
+        int[] layerSize = new int[k + 1];
+        for (int mask = 1; mask <= full; mask++) {
+            layerSize[Integer.bitCount(mask)]++;
+        }
+        for (int size = 0; size <= k; size++) {
+            layers[size] = new int[layerSize[size]];
+            layerSize[size] = 0;
+        }
+        for (int mask = 1; mask <= full; mask++) {
+            int size = Integer.bitCount(mask);
+            layers[size][layerSize[size]++] = mask;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int size = 2; size <= k; size++) {
+                Utils.notInterrupted();
+                pool.submit(new LayerTask(layers[size], 0, layers[size].length, n, dist, table, join, split)).get();
+            }
+        } catch (ExecutionException e) {
+            // an interrupted task (see LayerTask)
+            if (e.getCause() instanceof CancellationException) {
+                throw new InterruptedException("layer computation cancelled");
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
-        result.setWeight(v);
-        return result;
     }
 
-    private double inner(HashMap<Pair<Set<Integer>, Integer>, Double> stmap, Set<Integer> superset, Integer j) throws InterruptedException {
-        double u = Double.POSITIVE_INFINITY;
-        Integer superMin = superset.stream().min(Integer::compare).orElse(0);
-        PowerSet<Integer> ePowerSet = new PowerSet<>(superset, 1);
-        while (ePowerSet.hasNext()) {
-            Utils.notInterrupted();
-            Set<Integer> e = ePowerSet.next();
-            if (e.equals(superset) || !e.contains(superMin)) continue;
-            Set<Integer> temp = new HashSet<>(superset);
-            temp.removeAll(e);
-            u = Math.min(u, stmap.get(new Pair<>(e, j)) + stmap.get(new Pair<>(temp, j)));
+    /**
+     * computes the masks in [from, to) of a layer, splitting the range while it is large
+     * !an interrupted task throws a CancellationException, so a partially computed layer is never used
+     */
+    private static class LayerTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // number of masks * n entries below which a task is not split any further
+        private static final long THRESHOLD = 1L << 16;
+
+        private final int[] masks;
+        private final int from;
+        private final int to;
+        private final int n;
+        private final double[][] dist;
+        private final double[] table;
+        private final int[] join;
+        private final int[] split;
+
+        LayerTask(int[] masks, int from, int to, int n, double[][] dist, double[] table, int[] join, int[] split) {
+            this.masks = masks;
+            this.from = from;
+            this.to = to;
+            this.n = n;
+            this.dist = dist;
+            this.table = table;
+            this.join = join;
+            this.split = split;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && (long) (to - from) * n * n > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LayerTask(masks, from, middle, n, dist, table, join, split),
+                        new LayerTask(masks, middle, to, n, dist, table, join, split));
+                return;
+            }
+            double[] u = new double[n];
+            int[] uSplit = new int[n];
+            for (int i = from; i < to; i++) {
+                if (Thread.currentThread().isInterrupted()) throw new CancellationException("interrupted");
+                computeMask(masks[i], n, dist, table, join, split, u, uSplit);
+            }
         }
-        return u;
     }
 
+    /**
+     * add the tree of table[mask][v] to the graph
+     */
+    private void reconstruct(int mask, int v, int n, List<Integer> c, int[] join, int[] split,
+                             DistanceOracle shortestPaths, CompactGraph compact,
+                             SimpleWeightedGraph<Integer, DefaultWeightedEdge> tree) {
+        Integer vertex = compact.vertexId(v);
+        if (Integer.bitCount(mask) == 1) {
+            addPath(shortestPaths, vertex, c.get(Integer.numberOfTrailingZeros(mask)), tree);
+            return;
+        }
+        int j = join[mask * n + v];
+        addPath(shortestPaths, vertex, compact.vertexId(j), tree);
+        int e = split[mask * n + j];
+        reconstruct(e, j, n, c, join, split, shortestPaths, compact, tree);
+        reconstruct(mask ^ e, j, n, c, join, split, shortestPaths, compact, tree);
+    }
 
+    private void addPath(DistanceOracle shortestPaths, Integer source, Integer sink,
+                         SimpleWeightedGraph<Integer, DefaultWeightedEdge> tree) {
+        tree.addVertex(source);
+        tree.addVertex(sink);
+        if (!source.equals(sink)) {
+            GraphUtils.addEdgesToGraph(this.graph, tree, shortestPaths.getPath(source, sink).getEdgeList());
+        }
+    }
 }
@@ -0,0 +1,194 @@
+package steiner.exact;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import steiner.SteinerAlgorithm;
+import steiner.SteinerResult;
+import utils.Utils;
+import utils.graphextensions.CompactGraph;
+import utils.graphextensions.GraphUtils;
+import utils.graphextensions.IndexedMinHeap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * exact algorithm by Erickson, Monma & Veinott
+ * same dynamic programming table as Dreyfus & Wagner (see DreyfusWagner), but without all pairs shortest paths:
+ * * for every subset (mask) of the terminals, in increasing order:
+ * *        - merge: table[mask][v] = min over splits e of mask: table[e][v] + table[mask \ e][v]
+ * *        - grow: one dijkstra over the graph with every vertex starting at its merged value
+ * *                (table[mask][v] = min over u of table[mask][u] + dist(u, v))
+ * * runs in O(3^k * n + 2^k * m log n) time, so large graphs with few terminals are solvable
+ * * back-pointers (the dijkstra predecessor edge or the split) give the tree
+ * !this needs a table of exponential size, as the table holds all subsets of the terminals (2^(k-1) * n entries)
+ */
+public class EricksonMonmaVeinott extends SteinerAlgorithm {
+
+    // back-pointer of a terminal in its own singleton subset (the start of a path)
+    private static final int LEAF = Integer.MIN_VALUE;
+
+    public EricksonMonmaVeinott(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
+        super(graph, terminals);
+    }
+
+    @Override
+    public SteinerResult runInstance(SteinerResult result) throws InterruptedException {
+        // prep
+        CompactGraph compact = getCompactGraph();
+        int n = compact.vertexCount();
+        List<Integer> c = new ArrayList<>(this.terminals);
+        Integer q = Utils.getRandomSetElement(this.terminals, new Random());
+        if (q == null) {
+            result.setSmt(new SimpleWeightedGraph<>(DefaultWeightedEdge.class));
+            result.setWeight(0d);
+            return result;
+        }
+        c.remove(q);
+        int k = c.size();
+        // table (double) and back-pointer (int) per entry
+        if (k >= Integer.SIZE - 1 || (1L << k) * n > Integer.MAX_VALUE - 8
+                || (1L << k) * n * (Double.BYTES + Integer.BYTES) > Runtime.getRuntime().maxMemory()) {
+            throw new IllegalStateException("too many terminals for the dynamic programming table: " + (k + 1));
+        }
+        int full = (1 << k) - 1;
+        int root = compact.indexOf(q);
+
+        double[] table = new double[(full + 1) * n];
+        // back-pointer: edge id of the dijkstra predecessor (>= 0), LEAF, or -1 - split
+        int[] back = new int[(full + 1) * n];
+        Arrays.fill(table, Double.POSITIVE_INFINITY);
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+
+        for (int mask = 1; mask <= full; mask++) {
+            Utils.notInterrupted();
+            int offset = mask * n;
+            if (Integer.bitCount(mask) == 1) {
+                int t = compact.indexOf(c.get(Integer.numberOfTrailingZeros(mask)));
+                table[offset + t] = 0d;
+                back[offset + t] = LEAF;
+            } else {
+                // merge, splits e contain the lowest terminal so each split is visited once
+                int low = mask & -mask;
+                int rest = mask ^ low;
+                for (int sub = (rest - 1) & rest; ; sub = (sub - 1) & rest) {
+                    int e = sub | low;
+                    int eOffset = e * n;
+                    int otherOffset = (mask ^ e) * n;
+                    for (int v = 0; v < n; v++) {
+                        double value = table[eOffset + v] + table[otherOffset + v];
+                        if (value < table[offset + v]) {
+                            table[offset + v] = value;
+                            back[offset + v] = -1 - e;
+                        }
+                    }
+                    if (sub == 0) break;
+                }
+            }
+            grow(compact, table, back, offset, heap, mask == full ? root : -1);
+        }
+
+        double weight = k == 0 ? 0d : table[full * n + root];
+        if (weight == Double.POSITIVE_INFINITY) {
+            result.setWeight(weight);
+            return result;
+        }
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> smt = k == 0
+                ? singleton(q)
+                : reconstruct(compact, back, full, root);
+        result.setSmt(smt);
+        result.setWeight(smt.edgeSet().isEmpty() ? 0d : GraphUtils.getWeight(smt));
+        return result;
+    }
+
+    /**
+     * dijkstra over the graph starting from every vertex with a finite value in the row of the subset
+     *
+     * @param target vertex index to stop at when it is settled (-1 to settle all vertices)
+     */
+    private void grow(CompactGraph compact, double[] table, int[] back, int offset, IndexedMinHeap heap, int target) {
+        int n = compact.vertexCount();
+        for (int v = 0; v < n; v++) {
+            if (table[offset + v] < Double.POSITIVE_INFINITY) {
+                heap.insertOrDecrease(v, table[offset + v]);
+            }
+        }
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            if (u == target) break;
+            double du = table[offset + u];
+            for (int s = compact.slotStart(u); s < compact.slotEnd(u); s++) {
+                int v = compact.slotTarget(s);
+                int e = compact.slotEdge(s);
+                double dv = du + compact.edgeWeight(e);
+                if (dv < table[offset + v]) {
+                    table[offset + v] = dv;
+                    back[offset + v] = e;
+                    heap.insertOrDecrease(v, dv);
+                }
+            }
+        }
+        heap.clear();
+    }
+
+    /**
+     * follow the back-pointers from (mask, v) and collect the edges of the tree
+     */
+    private SimpleWeightedGraph<Integer, DefaultWeightedEdge> reconstruct(CompactGraph compact, int[] back, int mask, int v) {
+        int n = compact.vertexCount();
+        boolean[] inTree = new boolean[compact.edgeCount()];
+        int[] edges = new int[n];
+        int edgeCount = 0;
+        // stack of (mask, vertex) pairs
+        int[] stackMask = new int[n + Integer.bitCount(mask)];
+        int[] stackVertex = new int[stackMask.length];
+        int size = 0;
+        stackMask[size] = mask;
+        stackVertex[size++] = v;
+        while (size > 0) {
+            size--;
+            int m = stackMask[size];
+            int u = stackVertex[size];
+            int b = back[m * n + u];
+            if (b == LEAF) continue;
+            if (b >= 0) {
+                if (!inTree[b]) {
+                    inTree[b] = true;
+                    if (edgeCount == edges.length) edges = Arrays.copyOf(edges, 2 * edgeCount);
+                    edges[edgeCount++] = b;
+                }
+                if (size + 2 > stackMask.length) {
+                    stackMask = Arrays.copyOf(stackMask, 2 * stackMask.length);
+                    stackVertex = Arrays.copyOf(stackVertex, 2 * stackVertex.length);
+                }
+                stackMask[size] = m;
+                stackVertex[size++] = compact.opposite(b, u);
+            } else {
+                int e = -1 - b;
+                if (size + 2 > stackMask.length) {
+                    stackMask = Arrays.copyOf(stackMask, 2 * stackMask.length);
+                    stackVertex = Arrays.copyOf(stackVertex, 2 * stackVertex.length);
+                }
+                stackMask[size] = e;
+                stackVertex[size++] = u;
+                stackMask[size] = m ^ e;
+                stackVertex[size++] = u;
+            }
+        }
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> union = compact.getGraphFromEdges(edges, edgeCount);
+        // subtrees sharing zero weight edges could close a cycle, the MST of the union removes it
+        if (union.edgeSet().size() >= union.vertexSet().size()) {
+            return GraphUtils.getGraphFromSpanningTree(GraphUtils.getMST(union), union);
+        }
+        return union;
+    }
+
+    private static SimpleWeightedGraph<Integer, DefaultWeightedEdge> singleton(Integer vertex) {
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+        graph.addVertex(vertex);
+        return graph;
+    }
+}
@@ -0,0 +1,176 @@
+package steiner.localsearch;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import utils.graphextensions.CompactGraph;
+import utils.graphextensions.SolutionState;
+import utils.graphextensions.ZobristHash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * bounded pool of elite solutions of a CompactGraph, sorted by weight
+ * * a solution is stored as its sorted edge ids with the zobrist hash of the edge set (see ZobristHash)
+ * * duplicates are found through an index on the hashes, the edge arrays are only compared if the hashes are equal
+ * * a solution is inserted if the pool is not full or if it is lighter than the worst solution (which is dropped)
+ * * insert is synchronized, so parallel GRASP iterations can share a pool
+ */
+public class ElitePool {
+
+    // by weight, then by edges (so solutions with the same weight are different elements)
+    private static final Comparator<Solution> ORDER = Comparator.comparingDouble(Solution::getWeight)
+            .thenComparingLong(Solution::getHash)
+            .thenComparing(Solution::getEdges, Arrays::compare);
+
+    private final int capacity;
+    private final TreeSet<Solution> solutions = new TreeSet<>(ORDER);
+    private final Map<Long, List<Solution>> byHash = new HashMap<>();
+
+    public ElitePool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return whether the solution was inserted
+     */
+    public synchronized boolean insert(Solution solution) {
+        if (solutions.size() >= capacity && solutions.last().getWeight() <= solution.getWeight()) return false;
+        List<Solution> sameHash = byHash.get(solution.getHash());
+        if (sameHash != null && sameHash.stream().anyMatch(s -> Arrays.equals(s.getEdges(), solution.getEdges()))) {
+            return false;
+        }
+        if (solutions.size() >= capacity) {
+            Solution worst = solutions.pollLast();
+            List<Solution> worstHash = byHash.get(worst.getHash());
+            worstHash.remove(worst);
+            if (worstHash.isEmpty()) byHash.remove(worst.getHash());
+        }
+        solutions.add(solution);
+        byHash.computeIfAbsent(solution.getHash(), h -> new ArrayList<>(1)).add(solution);
+        return true;
+    }
+
+    public synchronized boolean isEmpty() {
+        return solutions.isEmpty();
+    }
+
+    public synchronized int size() {
+        return solutions.size();
+    }
+
+    /**
+     * @return lightest solution (the pool must not be empty)
+     */
+    public synchronized Solution best() {
+        return solutions.first();
+    }
+
+    /**
+     * @return the solutions, lightest first
+     */
+    public synchronized List<Solution> asList() {
+        return new ArrayList<>(solutions);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ElitePool" + solutions;
+    }
+
+    /**
+     * elite solution: weight, sorted edge ids (of a CompactGraph) and the zobrist hash of the edges
+     */
+    public static final class Solution {
+        private final CompactGraph graph;
+        private final double weight;
+        private final int[] edges;
+        private final long hash;
+
+        private Solution(CompactGraph graph, double weight, int[] edges, long hash) {
+            this.graph = graph;
+            this.weight = weight;
+            this.edges = edges;
+            this.hash = hash;
+        }
+
+        /**
+         * @param tree   steiner tree (subgraph of the JGraphT view of the graph)
+         * @param weight weight of the tree
+         * @return solution with the edges of the tree
+         */
+        public static Solution of(CompactGraph graph, SimpleWeightedGraph<Integer, DefaultWeightedEdge> tree,
+                                  double weight) {
+            int[] edges = new int[tree.edgeSet().size()];
+            int count = 0;
+            for (DefaultWeightedEdge edge : tree.edgeSet()) {
+                int u = graph.indexOf(tree.getEdgeSource(edge));
+                int v = graph.indexOf(tree.getEdgeTarget(edge));
+                edges[count++] = graph.getEdge(u, v);
+            }
+            Arrays.sort(edges);
+            return new Solution(graph, weight, edges, ZobristHash.of(edges, count));
+        }
+
+        /**
+         * @param state solution on the graph
+         * @return solution with the edges and weight of the state (using its incremental hash)
+         */
+        public static Solution of(CompactGraph graph, SolutionState state) {
+            return new Solution(graph, state.getWeight(), state.sortedEdges(), state.edgeHash());
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+
+        /**
+         * @return sorted edge ids (must not be changed)
+         */
+        public int[] getEdges() {
+            return edges;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+        /**
+         * @return whether the solution contains the edge
+         */
+        public boolean containsEdge(int e) {
+            return Arrays.binarySearch(edges, e) >= 0;
+        }
+
+        /**
+         * @return vertices (not indices) of the solution
+         */
+        public Set<Integer> vertexSet() {
+            Set<Integer> vertices = new HashSet<>();
+            for (int e : edges) {
+                vertices.add(graph.vertexId(graph.edgeSource(e)));
+                vertices.add(graph.vertexId(graph.edgeTarget(e)));
+            }
+            return vertices;
+        }
+
+        /**
+         * @return new graph containing the edges of the solution (with the weights of the graph)
+         */
+        public SimpleWeightedGraph<Integer, DefaultWeightedEdge> toGraph() {
+            return graph.getGraphFromEdges(edges, edges.length);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + weight + ", " + edges.length + " edges)";
+        }
+    }
+}
@@ -1,24 +1,24 @@
 package steiner.localsearch;
 
-import org.jgrapht.GraphPath;
+import org.jgrapht.Graphs;
 import org.jgrapht.alg.connectivity.ConnectivityInspector;
-import org.jgrapht.alg.interfaces.ShortestPathAlgorithm;
-import org.jgrapht.alg.interfaces.SpanningTreeAlgorithm;
-import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
-import org.jgrapht.alg.util.Pair;
-import org.jgrapht.graph.AsSubgraph;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import steiner.SteinerAlgorithm;
 import steiner.SteinerResult;
 import steiner.approx.TwoApproximation;
 import utils.Utils;
+import utils.graphextensions.CompactGraph;
+import utils.graphextensions.DistanceOracle;
+import utils.graphextensions.DynamicMST;
 import utils.graphextensions.GraphUtils;
+import utils.graphextensions.IntUnionFind;
+import utils.graphextensions.LinkCutTree;
 import utils.graphextensions.VoronoiDiagram;
 
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * 4 local searches from "Fast Local Search for Steiner Trees in Graphs"
@@ -32,11 +32,18 @@ public class FastLocalSearch extends SteinerAlgorithm {
     private final boolean kPExchange;
     private final boolean kVElimination;
 
-    private final FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> paths;
+    private final DistanceOracle paths;
 
     private SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution;
     private double weight;
     private SteinerResult result;
+    private KeyPathExchange keyPaths;
+    private DynamicMST dynamicMST;
+    // buffers of the key vertex elimination (by vertex index): dfs intervals of the solution and the repaired region
+    private int[] enter;
+    private int[] exit;
+    private boolean[] isChanged;
+    private int[] changedEdges;
 
     public FastLocalSearch(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
         this(graph, terminals, true, true, true, true);
@@ -55,7 +62,7 @@ public class FastLocalSearch extends SteinerAlgorithm {
         this.vElimination = vElimination;
         this.kPExchange = kPExchange;
         this.kVElimination = kVElimination;
-        paths = new FloydWarshallShortestPaths<>(this.graph);
+        paths = GraphUtils.getShortestPaths(this.graph, this.terminals);
     }
 
     /**
@@ -84,7 +91,7 @@ public class FastLocalSearch extends SteinerAlgorithm {
                 boolean kPExchangeImproved = false;
                 boolean iterImproved;
                 do {
-                    iterImproved = alternativeKeyPathExchange();
+                    iterImproved = Utils.voronoiKeyPathExchange ? keyPathExchange() : alternativeKeyPathExchange();
                     kPExchangeImproved |= iterImproved;
                 } while (iterImproved && Utils.notInterrupted());
                 improved |= kPExchangeImproved;
@@ -130,77 +137,85 @@ public class FastLocalSearch extends SteinerAlgorithm {
     /**
      * execute one pass of steiner vertex insertion on the current solution
      * see paper for explanation as the implementation follows it pretty closely
+     * the solution is kept in a link-cut tree, so the heaviest edge on the tree path from v to wI is found (and
+     * replaced) in O(log n), a candidate costs O(deg(v) log n) and its weight change is tracked as a delta
      *
      * @return whether the pass improved the solution
+     * @throws InterruptedException timeout
      */
-    private boolean steinerVertexInsertion() {
-        boolean improved = false;
-        HashSet<Integer> vertices = new HashSet<>(this.graph.vertexSet());
-        Set<Integer> solutionVs = solution.vertexSet();
-        vertices.removeAll(solutionVs);
-        Set<DefaultWeightedEdge> edgesToRemove = new HashSet<>();
-        Set<DefaultWeightedEdge> edgesToAdd = new HashSet<>();
-
-        for (Integer v : vertices) {
-            List<DefaultWeightedEdge> edges = new ArrayList<>();
-            // compute e1,e2,... here instead of before the loop
-            for (DefaultWeightedEdge edge : this.graph.edgesOf(v)) {
-                Integer src = this.graph.getEdgeSource(edge);
-                Integer trg = this.graph.getEdgeTarget(edge);
-                if ((src.equals(v) && solution.vertexSet().contains(trg))
-                        || (trg.equals(v) && solution.vertexSet().contains(src))) {
-                    edges.add(edge);
-                }
-            }
+    private boolean steinerVertexInsertion() throws InterruptedException {
+        CompactGraph compact = getCompactGraph();
+        int n = compact.vertexCount();
+        boolean[] inSolution = new boolean[n];
+        this.solution.vertexSet().forEach(v -> inSolution[compact.indexOf(v)] = true);
+        LinkCutTree tree = new LinkCutTree(n, compact.edgeCount());
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            maxDegree = Math.max(maxDegree, compact.degree(v));
+        }
+        for (DefaultWeightedEdge edge : this.solution.edgeSet()) {
+            int src = compact.indexOf(this.solution.getEdgeSource(edge));
+            int trg = compact.indexOf(this.solution.getEdgeTarget(edge));
+            int e = compact.getEdge(src, trg);
+            tree.link(e, src, trg, compact.edgeWeight(e));
+        }
+        // replacements of the current candidate: edgesToAdd[i] replaced edgesToRemove[i]
+        int[] edgesToAdd = new int[maxDegree];
+        int[] edgesToRemove = new int[maxDegree];
 
+        boolean improved = false;
+        for (int v = 0; v < n; v++) {
+            if (inSolution[v]) continue;
+            Utils.notInterrupted();
             //compute S1
-            if (edges.isEmpty()) continue;
-            solution.addVertex(v);
-            DefaultWeightedEdge edge = edges.remove(0);
-            DefaultWeightedEdge edge1 = solution.addEdge(this.graph.getEdgeSource(edge), this.graph.getEdgeTarget(edge));
-            solution.setEdgeWeight(edge1, this.graph.getEdgeWeight(edge));
-            edgesToRemove.add(edge1);
-
-            //compute Si
-            for (DefaultWeightedEdge edgeI : edges) {
-                Integer src = this.graph.getEdgeSource(edgeI);
-                Integer wI = src.equals(v) ? this.graph.getEdgeTarget(edgeI) : src;
-                DijkstraShortestPath<Integer, DefaultWeightedEdge> path = new DijkstraShortestPath<>(solution);
-                GraphPath<Integer, DefaultWeightedEdge> graphPath = path.getPath(v, wI);
-                Optional<DefaultWeightedEdge> maxOpt = graphPath
-                        .getEdgeList()
-                        .stream()
-                        .max(Comparator.comparing(this.graph::getEdgeWeight));
-                if (maxOpt.isPresent()) {
-                    DefaultWeightedEdge maxEdge = maxOpt.get();
-                    if (this.graph.getEdgeWeight(maxEdge) > this.graph.getEdgeWeight(edgeI)) {
-                        solution.removeEdge(maxEdge);
-                        edgesToAdd.add(maxEdge);
-                        DefaultWeightedEdge addedEdge = solution.addEdge(v, wI);
-                        solution.setEdgeWeight(addedEdge, this.graph.getEdgeWeight(edgeI));
-                        edgesToRemove.add(addedEdge);
-                    }
+            int first = -1;
+            double delta = 0d;
+            int count = 0;
+            for (int slot = compact.slotStart(v); slot < compact.slotEnd(v); slot++) {
+                int wI = compact.slotTarget(slot);
+                if (!inSolution[wI]) continue;
+                int edgeI = compact.slotEdge(slot);
+                if (first < 0) {
+                    first = edgeI;
+                    tree.link(edgeI, v, wI, compact.edgeWeight(edgeI));
+                    delta += compact.edgeWeight(edgeI);
+                    continue;
+                }
+                //compute Si
+                int maxEdge = tree.maxEdge(v, wI);
+                if (maxEdge >= 0 && compact.edgeWeight(maxEdge) > compact.edgeWeight(edgeI)) {
+                    tree.cut(maxEdge, compact.edgeSource(maxEdge), compact.edgeTarget(maxEdge));
+                    tree.link(edgeI, v, wI, compact.edgeWeight(edgeI));
+                    edgesToAdd[count] = edgeI;
+                    edgesToRemove[count++] = maxEdge;
+                    delta += compact.edgeWeight(edgeI) - compact.edgeWeight(maxEdge);
                 }
             }
-            Double newWeight = GraphUtils.getWeight(solution);
-            if (this.weight > newWeight) {
+            if (first < 0) continue;
+
+            if (delta < 0) {
                 // keep altered solution
-                this.weight = newWeight;
+                addEdgeToSolution(compact, first);
+                for (int i = 0; i < count; i++) {
+                    this.solution.removeEdge(
+                            compact.vertexId(compact.edgeSource(edgesToRemove[i])),
+                            compact.vertexId(compact.edgeTarget(edgesToRemove[i])));
+                    addEdgeToSolution(compact, edgesToAdd[i]);
+                }
+                inSolution[v] = true;
+                this.weight += delta;
                 improved = true;
                 result.setSmt(this.solution);
                 result.setWeight(this.weight);
-//                System.out.println("updated result");
             } else {
                 // restore solution
-                edgesToRemove.forEach(solution::removeEdge);
-                for (DefaultWeightedEdge e : edgesToAdd) {
-                    DefaultWeightedEdge edge2 = solution.addEdge(this.graph.getEdgeSource(e), this.graph.getEdgeTarget(e));
-                    solution.setEdgeWeight(edge2, this.graph.getEdgeWeight(e));
+                for (int i = count - 1; i >= 0; i--) {
+                    int removed = edgesToRemove[i];
+                    tree.cut(edgesToAdd[i], compact.edgeSource(edgesToAdd[i]), compact.edgeTarget(edgesToAdd[i]));
+                    tree.link(removed, compact.edgeSource(removed), compact.edgeTarget(removed), compact.edgeWeight(removed));
                 }
-                solution.removeVertex(v);
+                tree.cut(first, compact.edgeSource(first), compact.edgeTarget(first));
             }
-            edgesToRemove.clear();
-            edgesToAdd.clear();
         }
         return improved;
     }
@@ -209,35 +224,38 @@ public class FastLocalSearch extends SteinerAlgorithm {
      * execute one pass of steiner vertex elimination on the current solution
      * this comes down to the following basic steps:
      * *    for each vertex v in 'Vs \ T' (= the set of steiner vertices)
-     * *        - create subgraph of the full problem graph induced by 'Vs \ {v}'
-     * *        - determine the MST of this subgraph (using kruskal)
-     * *        - if this MST has lower total weight: replace current solution with the MST
+     * *        - remove v from the minimum spanning forest of 'Vs' (see DynamicMST: v's tree is reconnected with the
+     * *          cheapest replacement edges, so the move is a delta instead of a kruskal run)
+     * *        - if this MST has lower total weight: replace current solution with the MST, else undo the removal
      * !note that it might not be possible to determine a single connected MST of the subgraph
      * (e.g. when the vertex v that is deleted connects 2 components of the graph)
-     * because of this the MST has to be verified as a correct steiner tree (using GraphUtils.verifySteinerTree)
+     * because of this the forest has to be a single tree after the removal
      *
      * @return whether the pass improved the solution
      */
     private boolean simpleSteinerVertexElimination() {
         boolean improved = false;
+        if (this.dynamicMST == null) {
+            this.dynamicMST = new DynamicMST(getCompactGraph(), this.terminals);
+        }
+        this.dynamicMST.reset(solution.vertexSet());
         Set<Integer> vertices = new HashSet<>(solution.vertexSet());
         vertices.removeAll(terminals);
         for (Integer v : vertices) {
-            HashSet<Integer> subVertices = new HashSet<>(solution.vertexSet());
-            subVertices.remove(v);
-            AsSubgraph<Integer, DefaultWeightedEdge> subgraph = new AsSubgraph<>(this.graph, subVertices);
-            SpanningTreeAlgorithm.SpanningTree<DefaultWeightedEdge> mst = GraphUtils.getMST(subgraph);
-            SimpleWeightedGraph<Integer, DefaultWeightedEdge> newSol = GraphUtils.getGraphFromSpanningTree(mst, this.graph);
-            double newWeight = mst.getWeight();
-            // verify the steiner tree (could have made it impossible for the tree to be connected by excluding the vertex)
-            if (this.weight > newWeight && GraphUtils.verifySteinerTree(this.graph, this.terminals, newSol)) {
+            double newWeight = this.dynamicMST.getWeight() + this.dynamicMST.remove(v);
+            // the tree could have been disconnected by excluding the vertex
+            if (this.weight > newWeight && this.dynamicMST.isSteinerTree()) {
                 // keep altered solution
-                this.weight = newWeight;
-                solution = newSol;
+                this.dynamicMST.commit();
+                solution = this.dynamicMST.getTree();
+                this.weight = this.dynamicMST.getWeight();
+                assert GraphUtils.verifySteinerTree(this.graph, this.terminals, this.solution);
                 improved = true;
                 result.setSmt(this.solution);
                 result.setWeight(this.weight);
 //                System.out.println("updated result");
+            } else {
+                this.dynamicMST.undo();
             }
         }
         return improved;
@@ -245,293 +263,194 @@ public class FastLocalSearch extends SteinerAlgorithm {
 
 
     /**
-     * voronoi version, has some bugs
+     * voronoi version of the key path exchange:
+     * - remove a key path and repair the voronoi diagram of the solution vertices (only the regions of the removed
+     *   vertices change)
+     * - the cheapest boundary path between the regions of the 2 subtrees is the shortest connection of the subtrees
+     * - if connection is cheaper: keep improved tree
+     * used instead of alternativeKeyPathExchange if Utils.voronoiKeyPathExchange is set
      *
-     * @return
-     * @throws Exception
+     * @return whether an improvement was found
+     * @throws Exception something went wrong
      */
     private boolean keyPathExchange() throws Exception {
-//        System.out.println("weight: " + this.weight);
-        VoronoiDiagram voronoi = new VoronoiDiagram(this.graph, this.solution.vertexSet());
+        CompactGraph compact = getCompactGraph();
+        VoronoiDiagram voronoi = new VoronoiDiagram(compact, this.solution.vertexSet());
         Set<Integer> crucialVs = new HashSet<>(this.terminals);
         crucialVs.addAll(this.solution.vertexSet().stream().filter(v -> this.solution.edgesOf(v).size() >= 3).toList());
-        FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> solutionPaths = GraphUtils.getShortestPaths(this.solution);
 
-        for (Integer crucialV : crucialVs) {
-            for (Integer crucialW : crucialVs) {
-                if (!crucialV.equals(crucialW)) {
-                    GraphPath<Integer, DefaultWeightedEdge> path = solutionPaths.getPath(crucialV, crucialW);
-
-                    if (path == null)
-                        continue;
-
-                    List<Integer> vertexList = path.getVertexList();
-                    long count = vertexList.stream().filter(crucialVs::contains).count();
-                    if (count == 2) { // only the start and end of the path are crucial vertices
-                        // remove key path (= remove internal vertices and their incident edges (implicitly when removing vertices))
-                        Set<Integer> verticesToAdd = new HashSet<>(vertexList.subList(1, vertexList.size() - 1));
-                        Set<DefaultWeightedEdge> edgesToAdd = new HashSet<>(verticesToAdd
-                                .stream()
-                                .map(this.solution::edgesOf)
-                                .flatMap(Collection::stream)
-                                .toList());
-                        if (vertexList.size() == 2) {
-                            DefaultWeightedEdge edge = this.solution.removeEdge(crucialV, crucialW);
-                            edgesToAdd.add(edge);
-//                            System.out.println("removed " + edge);
-                        }
-                        this.solution.removeAllVertices(verticesToAdd);
-
-                        // get 2 subtrees
-                        ConnectivityInspector<Integer, DefaultWeightedEdge> inspector = new ConnectivityInspector<>(this.solution);
-                        List<Set<Integer>> connectedSets = inspector.connectedSets();
-                        if (connectedSets.size() != 2) {
-//                            System.out.println("ERROR");
-//                            System.out.println(this.solution);
-//                            System.out.println(vertexList);
-//                            System.out.println(connectedSets);
-                            throw new Exception("removing a key path \"" + vertexList + "\" didn't result in 2 subtrees, this should be impossible!");
-                        }
-                        Set<Integer> treeA = connectedSets.get(0);
-                        // connect 2 subtrees
-//                        voronoi.fullVoronoi(this.solution.vertexSet());
-                        voronoi = new VoronoiDiagram(this.graph, this.solution.vertexSet());
-                        Map<Integer, Integer> base = voronoi.getBase();
-                        Map<Integer, Set<DefaultWeightedEdge>> boundaries = voronoi.getBoundaries();
-                        Map<DefaultWeightedEdge, Pair<Integer, Integer>> inverseBoundaries = voronoi.getInverseBoundaries();
-                        Map<Integer, Double> vdist = voronoi.getVdist();
-                        FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> fullShortestPaths = voronoi.getShortestPaths();
-                        Map<Integer, Integer> predecessor = voronoi.getPredecessor();
-
-                        Set<Integer> basesA = treeA.stream().map(base::get).collect(Collectors.toSet());
-                        Set<Integer> basesB = new HashSet<>(voronoi.getBases());
-                        basesB.removeAll(basesA);
-
-                        // find best boundary edge
-                        Set<DefaultWeightedEdge> candidateEdges = basesA
-                                .stream()
-                                .map(boundaries::get)
-                                .flatMap(Collection::stream)
-                                .collect(Collectors.toSet());
-                        double bestWeight = Double.POSITIVE_INFINITY;
-                        DefaultWeightedEdge bestEdge = null;
-                        for (DefaultWeightedEdge candidateEdge : candidateEdges) {
-                            Pair<Integer, Integer> pair = inverseBoundaries.get(candidateEdge);
-                            Integer first = pair.getFirst();
-                            Integer second = pair.getSecond();
-                            Integer src = this.graph.getEdgeSource(candidateEdge);
-                            Integer trg = this.graph.getEdgeTarget(candidateEdge);
-                            if ((basesA.contains(first) && basesB.contains(second))
-                                    || (basesA.contains(second) && basesB.contains(first))) {
-                                // edge connects the trees
-                                double edgeCost = vdist.get(first) + fullShortestPaths.getPathWeight(src, trg) + vdist.get(second);
-                                if (edgeCost < bestWeight) {
-                                    bestWeight = edgeCost;
-                                    bestEdge = candidateEdge;
-                                }
-                            }
-                        }
-                        Set<DefaultWeightedEdge> edgesToRemove = new HashSet<>();
-                        Set<Integer> verticesToRemove = new HashSet<>();
-                        if (bestEdge != null) {
-                            // add path containing best edge to solution
-                            Integer src = this.graph.getEdgeSource(bestEdge);
-                            Integer trg = this.graph.getEdgeTarget(bestEdge);
-
-                            Integer vA = basesA.contains(base.get(src)) ? src : trg;
-                            Integer vB = vA.equals(trg) ? src : trg;
-
-                            sidePath(predecessor, basesA, vA, edgesToRemove, verticesToRemove, voronoi, basesB);
-                            sidePath(predecessor, basesB, vB, edgesToRemove, verticesToRemove, voronoi, basesA);
-                            DefaultWeightedEdge edge = this.solution.addEdge(vA, vB);
-                            this.solution.setEdgeWeight(edge, this.graph.getEdgeWeight(this.graph.getEdge(vA, vB)));
-
-                            // check new solution
-                            assert GraphUtils.verifySteinerTree(this.graph, this.terminals, this.solution);
-                            Double newWeight = GraphUtils.getWeight(this.solution);
-                            if (newWeight < this.weight) {
-//                                System.out.println("new weight: " + newWeight);
-                                this.weight = newWeight;
-                                result.setSmt(this.solution);
-                                result.setWeight(this.weight);
-//                                System.out.println("updated result");
-                                return true;
-                            }
-                        }
-
-                        //restore graph
-                        edgesToRemove.forEach(this.solution::removeEdge);
-                        verticesToRemove.forEach(this.solution::removeVertex);
-                        verticesToAdd.forEach(this.solution::addVertex);
-                        edgesToAdd.forEach(e -> this.solution.addEdge(this.solution.getEdgeSource(e), this.solution.getEdgeTarget(e), e));
+        for (List<Integer> vertexList : getKeyPaths(crucialVs)) {
+            Utils.notInterrupted();
+            Integer crucialV = vertexList.get(0);
+            Integer crucialW = vertexList.get(vertexList.size() - 1);
+            // remove key path (= remove internal vertices and their incident edges (implicitly when removing vertices))
+            Set<Integer> verticesToAdd = new HashSet<>(vertexList.subList(1, vertexList.size() - 1));
+            Set<DefaultWeightedEdge> edgesToAdd = new HashSet<>(verticesToAdd
+                    .stream()
+                    .map(this.solution::edgesOf)
+                    .flatMap(Collection::stream)
+                    .toList());
+            if (vertexList.size() == 2) {
+                DefaultWeightedEdge edge = this.solution.removeEdge(crucialV, crucialW);
+                edgesToAdd.add(edge);
+            }
+            this.solution.removeAllVertices(verticesToAdd);
+            int[] removedBases = verticesToAdd.stream().mapToInt(compact::indexOf).toArray();
+            double costToRestore = edgesToAdd.stream().mapToDouble(this.solution::getEdgeWeight).sum();
+
+            // get 2 subtrees
+            ConnectivityInspector<Integer, DefaultWeightedEdge> inspector = new ConnectivityInspector<>(this.solution);
+            List<Set<Integer>> connectedSets = inspector.connectedSets();
+            if (connectedSets.size() != 2) {
+                throw new Exception("removing a key path \"" + vertexList + "\" didn't result in 2 subtrees, this should be impossible!");
+            }
+            boolean[] sideA = new boolean[compact.vertexCount()];
+            connectedSets.get(0).forEach(v -> sideA[compact.indexOf(v)] = true);
+
+            // connect 2 subtrees: find best boundary edge between the regions of both subtrees
+            voronoi.convertToBases(removedBases, new int[0]);
+            double bestWeight = Double.POSITIVE_INFINITY;
+            int bestEdge = -1;
+            for (int e = 0; e < compact.edgeCount(); e++) {
+                if (voronoi.isBoundaryEdge(e)
+                        && sideA[voronoi.base(compact.edgeSource(e))] != sideA[voronoi.base(compact.edgeTarget(e))]) {
+                    double edgeCost = voronoi.boundaryWeight(e);
+                    if (edgeCost < bestWeight) {
+                        bestWeight = edgeCost;
+                        bestEdge = e;
                     }
                 }
             }
+
+            if (bestEdge >= 0 && bestWeight < costToRestore) {
+                // add boundary path containing best edge to solution
+                addEdgeToSolution(compact, bestEdge);
+                sidePath(compact, voronoi, compact.edgeSource(bestEdge));
+                sidePath(compact, voronoi, compact.edgeTarget(bestEdge));
+
+                // check new solution
+                assert GraphUtils.verifySteinerTree(this.graph, this.terminals, this.solution);
+                this.weight = this.weight - costToRestore + bestWeight;
+                result.setSmt(this.solution);
+                result.setWeight(this.weight);
+                return true;
+            }
+
+            //restore graph and diagram
+            voronoi.convertToBases(new int[0], removedBases);
+            verticesToAdd.forEach(this.solution::addVertex);
+            edgesToAdd.forEach(e -> this.solution.addEdge(this.solution.getEdgeSource(e), this.solution.getEdgeTarget(e), e));
         }
         return false;
     }
 
     /**
-     * add path from one side of boundary edge to base(that side)
-     *
-     * @param predecessor      from voronoi
-     * @param basesB           bases of side subtree
-     * @param vB               vertex from side of boundary edge
-     * @param edgesToRemove
-     * @param verticesToRemove
+     * @param crucialVs crucial vertices of the solution (terminals and vertices of degree >= 3)
+     * @return key paths of the solution (paths between 2 crucial vertices without other crucial vertices),
+     * found by walking from every crucial vertex along each of its edges (O(|solution|) instead of a path per pair)
      */
-    private void sidePath(
-            Map<Integer, Integer> predecessor,
-            Set<Integer> basesB,
-            Integer vB,
-            Set<DefaultWeightedEdge> edgesToRemove,
-            Set<Integer> verticesToRemove,
-            VoronoiDiagram voronoiDiagram,
-            Set<Integer> otherBases
-    ) {
-        Integer currentB = vB;
-        if (!basesB.contains(currentB)) {
-            Integer predB = predecessor.get(currentB);
-            if (!this.solution.containsVertex(currentB)) {
-                this.solution.addVertex(currentB);
-                verticesToRemove.add(currentB);
-            }
-            while (!basesB.contains(currentB)) {
-                if (!this.solution.containsVertex(predB)) {
-                    this.solution.addVertex(predB);
-                    verticesToRemove.add(predB);
-                }
-                if (!this.solution.containsEdge(currentB, predB)) {
-                    if (currentB.equals(predB)) {
-//                        System.out.println("weird");
-//                        System.out.println(vB);
-//                        System.out.println(currentB);
-//                        System.out.println(basesB);
-//                        System.out.println(otherBases);
-//                        System.out.println(predecessor);
-//                        System.out.println(voronoiDiagram);
+    private List<List<Integer>> getKeyPaths(Set<Integer> crucialVs) {
+        List<List<Integer>> keyPaths = new ArrayList<>();
+        for (Integer crucialV : crucialVs) {
+            for (DefaultWeightedEdge edge : this.solution.edgesOf(crucialV)) {
+                List<Integer> vertexList = new ArrayList<>();
+                vertexList.add(crucialV);
+                Integer current = Graphs.getOppositeVertex(this.solution, edge, crucialV);
+                DefaultWeightedEdge previous = edge;
+                while (current != null && !crucialVs.contains(current)) {
+                    vertexList.add(current);
+                    DefaultWeightedEdge next = null;
+                    for (DefaultWeightedEdge e : this.solution.edgesOf(current)) {
+                        if (e != previous) next = e;
                     }
-                    DefaultWeightedEdge e = this.solution.addEdge(currentB, predB);
-                    this.solution.setEdgeWeight(e, this.graph.getEdgeWeight(this.graph.getEdge(currentB, predB)));
-                    edgesToRemove.add(e);
+                    // steiner leaf: not a key path
+                    current = next == null ? null : Graphs.getOppositeVertex(this.solution, next, current);
+                    previous = next;
+                }
+                // every key path is found from both ends
+                if (current != null && crucialV < current) {
+                    vertexList.add(current);
+                    keyPaths.add(vertexList);
                 }
-                currentB = predB;
-                predB = predecessor.get(predB);
             }
         }
+        return keyPaths;
+    }
+
+    /**
+     * add path from one side of boundary edge to its base (a vertex of the solution)
+     *
+     * @param voronoi voronoi diagram of the solution vertices
+     * @param v       vertex index from side of boundary edge
+     */
+    private void sidePath(CompactGraph compact, VoronoiDiagram voronoi, int v) {
+        int current = v;
+        while (!voronoi.isBase(current)) {
+            int e = voronoi.pred(current);
+            addEdgeToSolution(compact, e);
+            current = compact.opposite(e, current);
+        }
+    }
+
+    private void addEdgeToSolution(CompactGraph compact, int e) {
+        Integer src = compact.vertexId(compact.edgeSource(e));
+        Integer trg = compact.vertexId(compact.edgeTarget(e));
+        this.solution.addVertex(src);
+        this.solution.addVertex(trg);
+        // boundary paths in the same region can share edges
+        DefaultWeightedEdge edge = this.solution.addEdge(src, trg);
+        if (edge != null) this.solution.setEdgeWeight(edge, compact.edgeWeight(e));
     }
 
     /**
-     * try to find a single improving key path exchange move:
+     * try to find a single improving key path exchange move (see KeyPathExchange):
      * - remove a key path (a path between 2 crucial vertices that doesnt contain any other crucial vertex)
      * - try to connect the resulting components as cheaply as possible
      * - if connection is cheaper: keep improved tree
      *
      * @return whether an improvement was found
-     * @throws Exception something went wrong
+     * @throws InterruptedException timeout
      */
-    private boolean alternativeKeyPathExchange() throws Exception {
-
-        Set<Integer> crucialVs = new HashSet<>(this.terminals);
-        crucialVs.addAll(this.solution.vertexSet().stream().filter(v -> this.solution.edgesOf(v).size() >= 3).toList());
-//        FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> solutionPaths = GraphUtils.getShortestPaths(this.solution);
-        ShortestPathAlgorithm<Integer, DefaultWeightedEdge> solutionPaths = new DijkstraShortestPath<>(this.solution);
-
-        for (Integer crucialV : crucialVs) {
-            for (Integer crucialW : crucialVs) {
-                if (crucialV < crucialW) {
-                    GraphPath<Integer, DefaultWeightedEdge> path = solutionPaths.getPath(crucialV, crucialW);
-                    List<Integer> vertexList = path.getVertexList();
-                    long count = vertexList.stream().filter(crucialVs::contains).count();
-                    if (count == 2) { // only the start and end of the path are crucial vertices
-
-                        // remove key path (= remove internal vertices and their incident edges (implicitly when removing vertices))
-                        Set<Integer> verticesToAdd = new HashSet<>(vertexList.subList(1, vertexList.size() - 1));
-                        Set<DefaultWeightedEdge> edgesToAdd = new HashSet<>(verticesToAdd
-                                .stream()
-                                .map(this.solution::edgesOf)
-                                .flatMap(Collection::stream)
-                                .toList()
-                        );
-                        if (vertexList.size() == 2) {
-                            DefaultWeightedEdge edge = this.solution.removeEdge(crucialV, crucialW);
-                            edgesToAdd.add(edge);
-                        }
-                        this.solution.removeAllVertices(verticesToAdd);
-                        double costToRestore = edgesToAdd.stream().mapToDouble(this.solution::getEdgeWeight).sum();
-
-                        // get 2 subtrees
-                        ConnectivityInspector<Integer, DefaultWeightedEdge> inspector = new ConnectivityInspector<>(
-                                this.solution
-                        );
-                        List<Set<Integer>> connectedSets = inspector.connectedSets();
-                        if (connectedSets.size() != 2) {
-                            throw new Exception("removing a key path \"" + vertexList
-                                    + "\" didn't result in 2 subtrees, this should be impossible!");
-                        }
-
-                        // connect 2 subtrees
-                        double bestWeight = Double.POSITIVE_INFINITY;
-                        GraphPath<Integer, DefaultWeightedEdge> bestPath = null;
-                        for (Integer vA : connectedSets.get(0)) {
-                            for (Integer vB : connectedSets.get(1)) {
-                                GraphPath<Integer, DefaultWeightedEdge> connectionPath = this.paths.getPath(vA, vB);
-                                Set<DefaultWeightedEdge> edges = new HashSet<>(connectionPath.getEdgeList());
-                                edges.removeAll(this.solution.edgeSet());
-                                double pathWeight = edges.stream().mapToDouble(this.graph::getEdgeWeight).sum();
-                                if (pathWeight < bestWeight) {
-                                    bestWeight = pathWeight;
-                                    bestPath = connectionPath;
-                                }
-                            }
-                        }
-
-                        Set<DefaultWeightedEdge> edges = new HashSet<>(bestPath.getEdgeList());
-                        edges.removeAll(this.solution.edgeSet());
-                        Set<Integer> vertices = new HashSet<>(bestPath.getVertexList());
-                        vertices.removeAll(this.solution.vertexSet());
-
-                        //construct new solution
-                        vertices.forEach(this.solution::addVertex);
-                        Set<Integer> verticesToRemove = new HashSet<>(vertices);
-                        edges.forEach(e -> this.solution.addEdge(
-                                this.solution.getEdgeSource(e),
-                                this.solution.getEdgeTarget(e),
-                                e));
-                        Set<DefaultWeightedEdge> edgesToRemove = new HashSet<>(edges);
-
-                        // check new solution
-                        assert GraphUtils.verifySteinerTree(this.graph, this.terminals, this.solution);
-                        double newWeight = this.weight - costToRestore + bestWeight;
-                        if (newWeight < this.weight) {
-                            this.weight = newWeight;
-                            result.setSmt(this.solution);
-                            result.setWeight(this.weight);
-//                            System.out.println("updated result");
-                            return true;
-                        }
-
-                        //restore graph if solution wasn't improved
-                        edgesToRemove.forEach(this.solution::removeEdge);
-                        verticesToRemove.forEach(this.solution::removeVertex);
-                        verticesToAdd.forEach(this.solution::addVertex);
-                        edgesToAdd.forEach(e -> this.solution.addEdge(
-                                this.solution.getEdgeSource(e),
-                                this.solution.getEdgeTarget(e),
-                                e));
-                    }
-                }
-            }
+    private boolean alternativeKeyPathExchange() throws InterruptedException {
+        if (this.keyPaths == null) {
+            this.keyPaths = new KeyPathExchange(getCompactGraph(), this.terminals);
+        }
+        if (this.keyPaths.improve(this.solution) > 0) {
+            assert GraphUtils.verifySteinerTree(this.graph, this.terminals, this.solution);
+            this.weight = GraphUtils.getWeight(this.solution);
+            result.setSmt(this.solution);
+            result.setWeight(this.weight);
+            return true;
         }
         return false;
     }
 
     /**
-     * remove a key vertex from the pinned steiner vertices and try 2-approximation without that key vertex
+     * key vertex elimination on a voronoi diagram of the solution vertices:
+     * - remove a key vertex (a steiner vertex of degree >= 3) and its key paths
+     * - repair the voronoi diagram (only the regions of the removed vertices change)
+     * - reconnect the resulting subtrees by the MST of the boundary paths between their regions (kruskal)
+     * - if the MST is cheaper than the removed key paths: keep improved tree
+     * per diagram (built again after every improvement) the boundary edges are sorted by boundary weight and the
+     * solution tree gets dfs intervals, O(m log m)
+     * per key vertex: O(p + R log n + c log c + s k), p the vertices of the key paths, R the vertices (and edges) of
+     * the repaired regions, c their edges, s the boundary edges kruskal scans before it can stop (O(m) in the worst
+     * case) and k the degree of the key vertex
+     * * the subtree of a base follows from the dfs intervals of the key path ends, so no labelling of the tree
+     * * the buffers are reused and only the entries of the repaired regions are reset
+     * * a rejected move is undone by the undo log of the diagram, not by another repair
      *
      * @return whether an improvement was found
      */
     private boolean keyVertexElimination() throws InterruptedException {
+        CompactGraph compact = getCompactGraph();
+        int n = compact.vertexCount();
+        if (enter == null) {
+            enter = new int[n];
+            exit = new int[n];
+            isChanged = new boolean[n];
+            changedEdges = new int[16];
+        }
         boolean improved = false;
         Set<Integer> keyVs = this.solution
                 .vertexSet()
@@ -539,23 +458,200 @@ public class FastLocalSearch extends SteinerAlgorithm {
                 .filter(v -> this.solution.edgesOf(v).size() >= 3)
                 .collect(Collectors.toSet());
         keyVs.removeAll(this.terminals);
+        VoronoiDiagram voronoi = null;
+        int[] sortedEdges = null;
         for (Integer keyV : keyVs) {
-            if (this.solution.vertexSet().contains(keyV)) {
-                Set<Integer> vertices = new HashSet<>(this.solution.vertexSet());
-                vertices.remove(keyV);
-                TwoApproximation twoApprox = new TwoApproximation(this.graph, vertices, this.paths);
-                SteinerResult tempResult = twoApprox.runInstance(new SteinerResult(null, -1));
-                double newWeight = tempResult.getWeight();
-                if (newWeight < this.weight) {
-                    this.weight = newWeight;
-                    this.solution = tempResult.getSmt();
+            Utils.notInterrupted();
+            if (this.solution.containsVertex(keyV) && this.solution.edgesOf(keyV).size() >= 3) {
+                if (voronoi == null) {
+                    voronoi = new VoronoiDiagram(compact, this.solution.vertexSet());
+                    VoronoiDiagram diagram = voronoi;
+                    sortedEdges = sortByBoundaryWeight(
+                            voronoi,
+                            IntStream.range(0, compact.edgeCount()).filter(diagram::isBoundaryEdge).toArray()
+                    );
+                    numberSolution(compact);
+                }
+                if (eliminateKeyVertex(compact, voronoi, sortedEdges, keyV)) {
+                    assert GraphUtils.verifySteinerTree(this.graph, this.terminals, this.solution);
+                    this.weight = GraphUtils.getWeight(this.solution);
                     this.result.updateIfBetter(this.solution, this.weight);
-//                    System.out.println("updated result");
                     improved = true;
+                    // the diagram belongs to the old solution
+                    voronoi = null;
                 }
             }
         }
 
         return improved;
     }
+
+    /**
+     * dfs intervals of the solution tree (rooted at a terminal): v is in the subtree of u iff
+     * enter[u] <= enter[v] <= exit[u]
+     */
+    private void numberSolution(CompactGraph compact) {
+        int size = this.solution.vertexSet().size();
+        int[] preorder = new int[size];
+        int[] parent = new int[size];
+        Deque<Integer> stack = new ArrayDeque<>();
+        Deque<Integer> stackParent = new ArrayDeque<>();
+        stack.push(this.terminals.iterator().next());
+        stackParent.push(-1);
+        int time = 0;
+        while (!stack.isEmpty()) {
+            Integer v = stack.pop();
+            int p = stackParent.pop();
+            int index = compact.indexOf(v);
+            enter[index] = time;
+            exit[index] = time;
+            preorder[time] = index;
+            parent[time++] = p;
+            for (Integer w : Graphs.neighborListOf(this.solution, v)) {
+                if (p < 0 || compact.indexOf(w) != preorder[p]) {
+                    stack.push(w);
+                    stackParent.push(enter[index]);
+                }
+            }
+        }
+        for (int t = size - 1; t > 0; t--) {
+            int p = preorder[parent[t]];
+            exit[p] = Math.max(exit[p], exit[preorder[t]]);
+        }
+    }
+
+    /**
+     * remove the key vertex and its key paths and reconnect the subtrees if that is cheaper
+     *
+     * @param voronoi     voronoi diagram of the solution vertices, undone if the solution doesn't change
+     * @param sortedEdges the boundary edges of the voronoi diagram, sorted by their boundary weight
+     * @return whether the solution improved (the solution is only changed then)
+     */
+    private boolean eliminateKeyVertex(CompactGraph compact, VoronoiDiagram voronoi, int[] sortedEdges, Integer keyV) {
+        // remove the key vertex and the steiner vertices of degree <= 2 behind it
+        Set<Integer> removedVs = new HashSet<>();
+        removedVs.add(keyV);
+        List<Integer> endList = new ArrayList<>();
+        double removedWeight = 0d;
+        for (DefaultWeightedEdge edge : this.solution.edgesOf(keyV)) {
+            Integer previous = keyV;
+            Integer current = Graphs.getOppositeVertex(this.solution, edge, keyV);
+            removedWeight += this.solution.getEdgeWeight(edge);
+            while (!this.terminals.contains(current) && this.solution.edgesOf(current).size() <= 2) {
+                removedVs.add(current);
+                DefaultWeightedEdge next = null;
+                for (DefaultWeightedEdge e : this.solution.edgesOf(current)) {
+                    if (!Graphs.getOppositeVertex(this.solution, e, current).equals(previous)) next = e;
+                }
+                if (next == null) break; // steiner leaf
+                removedWeight += this.solution.getEdgeWeight(next);
+                previous = current;
+                current = Graphs.getOppositeVertex(this.solution, next, current);
+            }
+            if (!removedVs.contains(current)) endList.add(current);
+        }
+
+        // the subtrees are the subtrees of the ends below the key vertex and the rest of the tree (parent side)
+        int[] ends = endList.stream().mapToInt(compact::indexOf).toArray();
+        int key = compact.indexOf(keyV);
+        int parentEnd = -1;
+        for (int i = 0; i < ends.length; i++) {
+            if (enter[ends[i]] <= enter[key] || enter[ends[i]] > exit[key]) parentEnd = i;
+        }
+
+        // repair the diagram, the boundary weights only changed for edges of the repaired regions
+        int[] removedBases = removedVs.stream().mapToInt(compact::indexOf).toArray();
+        int[] changed = voronoi.convertToBases(removedBases, new int[0]);
+        int changedEdgeCount = 0;
+        for (int v : changed) {
+            isChanged[v] = true;
+        }
+        for (int v : changed) {
+            for (int slot = compact.slotStart(v); slot < compact.slotEnd(v); slot++) {
+                int e = compact.slotEdge(slot);
+                int w = compact.opposite(e, v);
+                // edges between 2 changed vertices are added once
+                if ((!isChanged[w] || v < w) && voronoi.isBoundaryEdge(e)) {
+                    if (changedEdgeCount == changedEdges.length) {
+                        changedEdges = Arrays.copyOf(changedEdges, 2 * changedEdgeCount);
+                    }
+                    changedEdges[changedEdgeCount++] = e;
+                }
+            }
+        }
+        int[] sortedChanged = sortByBoundaryWeight(voronoi, Arrays.copyOf(changedEdges, changedEdgeCount));
+
+        // kruskal on the subtrees, merging both sorted edge lists
+        int k = ends.length;
+        IntUnionFind subtrees = new IntUnionFind(k);
+        int[] chosen = new int[Math.max(0, k - 1)];
+        int unions = 0;
+        double cost = 0d;
+        int i = 0;
+        int j = 0;
+        while (unions < k - 1) {
+            while (i < sortedEdges.length && (isChanged[compact.edgeSource(sortedEdges[i])]
+                    || isChanged[compact.edgeTarget(sortedEdges[i])])) {
+                i++;
+            }
+            int e;
+            if (i < sortedEdges.length && (j >= sortedChanged.length
+                    || voronoi.boundaryWeight(sortedEdges[i]) <= voronoi.boundaryWeight(sortedChanged[j]))) {
+                e = sortedEdges[i++];
+            } else if (j < sortedChanged.length) {
+                e = sortedChanged[j++];
+            } else {
+                break;
+            }
+            double edgeCost = voronoi.boundaryWeight(e);
+            // every remaining connection costs at least edgeCost
+            if (cost + (k - 1 - unions) * edgeCost >= removedWeight) break;
+            int componentSource = subtree(ends, parentEnd, voronoi.base(compact.edgeSource(e)));
+            int componentTarget = subtree(ends, parentEnd, voronoi.base(compact.edgeTarget(e)));
+            if (subtrees.union(componentSource, componentTarget)) {
+                cost += edgeCost;
+                chosen[unions++] = e;
+            }
+        }
+        for (int v : changed) {
+            isChanged[v] = false;
+        }
+
+        if (unions < k - 1) {
+            voronoi.undoConversion();
+            return false;
+        }
+        // replace the key paths by the boundary paths of the chosen edges
+        this.solution.removeAllVertices(removedVs);
+        for (int c = 0; c < unions; c++) {
+            addEdgeToSolution(compact, chosen[c]);
+            sidePath(compact, voronoi, compact.edgeSource(chosen[c]));
+            sidePath(compact, voronoi, compact.edgeTarget(chosen[c]));
+        }
+        return true;
+    }
+
+    /**
+     * @param ends      the key path ends (vertex indices)
+     * @param parentEnd the end on the parent side of the key vertex
+     * @param b         a base (a solution vertex that isn't removed)
+     * @return the end whose subtree contains b
+     */
+    private int subtree(int[] ends, int parentEnd, int b) {
+        for (int i = 0; i < ends.length; i++) {
+            if (i != parentEnd && enter[ends[i]] <= enter[b] && enter[b] <= exit[ends[i]]) return i;
+        }
+        return parentEnd;
+    }
+
+    /**
+     * @return the edges, sorted by boundary weight (ties by edge id)
+     */
+    private static int[] sortByBoundaryWeight(VoronoiDiagram voronoi, int[] edges) {
+        return Arrays.stream(edges)
+                .boxed()
+                .sorted(Comparator.<Integer>comparingDouble(voronoi::boundaryWeight).thenComparingInt(e -> e))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
 }
@@ -1,20 +1,22 @@
 package steiner.localsearch;
 
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.connectivity.ConnectivityInspector;
-import org.jgrapht.alg.interfaces.ShortestPathAlgorithm;
-import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
 import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import steiner.SteinerAlgorithm;
 import steiner.SteinerResult;
+import steiner.localsearch.ElitePool.Solution;
 import steiner.localsearch.constructionmethods.*;
 import utils.Logger;
 import utils.Utils;
+import utils.graphextensions.CompactGraph;
+import utils.graphextensions.DynamicMST;
 import utils.graphextensions.GraphUtils;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
@@ -24,16 +26,33 @@ import static java.lang.Math.min;
  * *                                     weight perturbations methods,
  * *                                     local search methods,
  * *                                     and path relinking strategies
+ * with more than 1 thread, the GRASP iterations and the path relinking pairs run in parallel on one fork-join pool
  */
 public class HybridGRASP extends SteinerAlgorithm {
     private static final int MAX_ITER = 10;
     private static final int ELITE_SIZE = 5;
+    // use fixed seed for reproducibility in testing/debugging
+    private static final long SEED = 1024 * 1024 - 1;
     Random random;
+    // number of threads the GRASP iterations run on (1: sequential)
+    private final int threads;
+    // local search structures of the current thread, and all of them (for the transposition table counters)
+    private ThreadLocal<Workspace> workspace;
+    private final List<Workspace> workspaces = Collections.synchronizedList(new ArrayList<>());
+    // pool of the current run (null: sequential)
+    private ForkJoinPool pool;
 
     public HybridGRASP(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
+        this(graph, terminals, 1);
+    }
+
+    /**
+     * @param threads number of threads to run the GRASP iterations on (1: sequential)
+     */
+    public HybridGRASP(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals, int threads) {
         super(graph, terminals);
-        // use fixed seed for reproducibility in testing/debugging
-        random = new Random(1024 * 1024 - 1);
+        random = new Random(SEED);
+        this.threads = threads;
     }
 
     @Override
@@ -49,81 +68,144 @@ public class HybridGRASP extends SteinerAlgorithm {
      * @throws Exception key path removal not resulting in 2 subtrees
      */
     private SteinerResult grasp(SteinerResult result) throws Exception {
+        CompactGraph compact = getCompactGraph();
+        workspaces.clear();
+        workspace = ThreadLocal.withInitial(() -> {
+            Workspace threadWorkspace = new Workspace(compact, terminals);
+            workspaces.add(threadWorkspace);
+            return threadWorkspace;
+        });
+        /* tCount by edge id, initialized to 0 */
+        int[] tCount = new int[compact.edgeCount()];
+        ElitePool eliteSolutions = new ElitePool(ELITE_SIZE);
+
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            graspIterations(tCount, eliteSolutions, result);
+
+            /** apply path relinking to pool of elite solutions */
+            Logger.debug("applying path relinking");
+            eliteSolutions = PathRelinkingLoop(eliteSolutions, result, RelinkingType.HYBRID);
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+
+        Logger.debug("transposition table hits: " + getTranspositionHits() + ", misses: " + getTranspositionMisses());
+
+        /** return best solution found */
+        Logger.debug("best solution:");
+        updateResult(result, eliteSolutions.best());
+        return result;
+    }
+
+    /**
+     * one GRASP iteration: perturb the weights, construct a greedy solution with them and apply local search to it
+     *
+     * @param i       number of the iteration
+     * @param rng     random numbers of the iteration
+     * @param tCount  number of local search solutions every edge appeared in (by edge id), read only
+     * @param counted number of iterations (local search solutions) counted in tCount
+     * @param result  result to be updated
+     * @return the solution after local search
+     * @throws Exception key path removal not resulting in 2 subtrees
+     */
+    private Solution graspIteration(int i, RandomGenerator rng, int[] tCount, int counted,
+                                    SteinerResult result) throws Exception {
+        Utils.notInterrupted();
         PerturbationEnum[] perturbationMethods = PerturbationEnum.values();
         ConstructionEnum[] constructionMethods = ConstructionEnum.values();
-        HashMap<DefaultWeightedEdge, Double> weights = new HashMap<>();
-        HashMap<DefaultWeightedEdge, Integer> tCount = new HashMap<>();
-        List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutions = new ArrayList<>();
-
-        /* start with original weights */
-        graph.edgeSet().forEach(e -> weights.put(e, graph.getEdgeWeight(e)));
-        /* initialize tCount to 0 */
-        graph.edgeSet().forEach(e -> tCount.put(e, 0));
-
-        for (int i = 0; i < MAX_ITER; i++) {
-            Utils.notInterrupted();
-            /** apply perturbation strategy to weights */
-            Logger.debug("applying perturbation strategy");
-            int cMethod;
-            if (i >= constructionMethods.length) {
-                cMethod = random.nextInt(0, constructionMethods.length);
-                for (DefaultWeightedEdge edge : graph.edgeSet()) {
-                    double wOriginal = graph.getEdgeWeight(edge);
-                    int tI1 = tCount.get(edge);
-                    /* rotate strategies every iteration */
-                    double rI = perturbationMethods[i % perturbationMethods.length].getCoefficient(tI1, i);
-                    double bound = wOriginal * rI;
-                    double wI = random.nextDouble(min(wOriginal, bound), max(wOriginal, bound));
-                    weights.put(edge, wI);
-                }
-
-            } else {
-                // make sure to use every construction method once for the first couple iterations
-                cMethod = i;
+        CompactGraph compact = getCompactGraph();
+        double[] weights;
+
+        /** apply perturbation strategy to weights */
+        Logger.debug("applying perturbation strategy");
+        int cMethod;
+        if (i >= constructionMethods.length) {
+            cMethod = rng.nextInt(0, constructionMethods.length);
+            weights = new double[compact.edgeCount()];
+            for (int e = 0; e < weights.length; e++) {
+                double wOriginal = compact.edgeWeight(e);
+                int tI1 = tCount[e];
+                /* rotate strategies every iteration */
+                double rI = perturbationMethods[i % perturbationMethods.length].getCoefficient(tI1, counted);
+                double bound = wOriginal * rI;
+                weights[e] = rng.nextDouble(min(wOriginal, bound), max(wOriginal, bound));
             }
 
-            /** construct greedy solution using perturbated weights */
-            Logger.debug("constructing greedy solution");
-            SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution = constructionMethods[cMethod]
-                    .getConstructionMethod()
-                    .constructSolution(graph, terminals, weights);
-            GraphUtils.replaceWeightsInPlace(solution, graph);
-            double weight = GraphUtils.getWeight(solution);
-            // replace solution in result if better
-            result.updateIfBetter(solution, weight);
-
-            /** apply local search to greedy solution using original weights */
-            Logger.debug("applying local search to greedy solution");
-            Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> localPair = hybridLocalSearch(
-                    solution,
-                    weight,
-                    result
-            );
-
-            SimpleWeightedGraph<Integer, DefaultWeightedEdge> localSolution = localPair.getSecond();
-            // update tCount
-            for (DefaultWeightedEdge edge : localSolution.edgeSet()) {
-                Integer source = localSolution.getEdgeSource(edge);
-                Integer target = localSolution.getEdgeTarget(edge);
-                DefaultWeightedEdge graphEdge = graph.getEdge(source, target);
-                tCount.put(graphEdge, tCount.get(graphEdge) + 1);
-            }
+        } else {
+            // make sure to use every construction method once for the first couple iterations
+            cMethod = i;
+            /* start with original weights */
+            weights = compact.copyWeights();
+        }
 
+        /** construct greedy solution using perturbated weights */
+        Logger.debug("constructing greedy solution");
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution = constructionMethods[cMethod]
+                .getConstructionMethod()
+                .constructSolution(compact, terminals, weights, rng);
+        double weight = GraphUtils.getWeight(solution);
+        // replace solution in result if better
+        result.updateIfBetter(solution, weight);
+
+        /** apply local search to greedy solution using original weights */
+        Logger.debug("applying local search to greedy solution");
+        Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> localPair = hybridLocalSearch(
+                solution,
+                weight,
+                rng,
+                result
+        );
+        return Solution.of(compact, localPair.getSecond(), localPair.getFirst());
+    }
 
-            /** update elite solutions */
-            insertEliteSolution(eliteSolutions, localSolution, localPair.getFirst());
+    /**
+     * run the GRASP iterations in batches of one iteration per thread (a batch runs on the pool)
+     * * every iteration gets its own random stream, split from one seeded SplittableRandom in iteration order
+     * * the iterations of a batch perturb the weights with the tCount of the batches before it,
+     * *        tCount and the elite solutions are updated after every batch, in iteration order
+     * * the iterations with the original weights (one per construction method) form their own batch(es),
+     * *        so every perturbed iteration sees at least their solutions in tCount
+     * so the elite solutions don't depend on the scheduling, only on the number of threads
+     * (with 1 thread every iteration sees the tCount of all iterations before it)
+     *
+     * @param tCount         number of local search solutions every edge appeared in (by edge id)
+     * @param eliteSolutions pool of elite solutions
+     * @param result         result to be updated (concurrently)
+     * @throws Exception key path removal not resulting in 2 subtrees
+     */
+    private void graspIterations(int[] tCount, ElitePool eliteSolutions, SteinerResult result) throws Exception {
+        SplittableRandom seeds = new SplittableRandom(SEED);
+        int batchSize = max(1, threads);
+        int unperturbed = ConstructionEnum.values().length;
+        for (int from = 0, to; from < MAX_ITER; from = to) {
+            to = min(MAX_ITER, from + batchSize);
+            if (from < unperturbed) to = min(to, unperturbed);
+            // tCount holds the solutions of the iterations before the batch
+            int counted = from;
+            List<Callable<Solution>> iterations = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                int iteration = i;
+                SplittableRandom rng = seeds.split();
+                iterations.add(() -> graspIteration(iteration, rng, tCount, counted, result));
+            }
+            for (Solution localElite : invokeAll(iterations)) {
+                // update tCount
+                for (int e : localElite.getEdges()) {
+                    tCount[e]++;
+                }
+                /** update elite solutions */
+                eliteSolutions.insert(localElite);
+            }
         }
+    }
 
-        /** apply path relinking to pool of elite solutions */
-        Logger.debug("applying path relinking");
-        eliteSolutions = PathRelinkingLoop(eliteSolutions, result, RelinkingType.HYBRID);
-
-        /** return best solution found */
-        Logger.debug("best solution:");
-        eliteSolutions.sort(Comparator.comparing(Pair::getFirst));
-        Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> pair = eliteSolutions.get(0);
-        result.updateIfBetter(pair.getSecond(), pair.getFirst());
-        return result;
+    /**
+     * run the tasks on the pool, or one after another on the current thread if the run is sequential
+     * (see Utils.invokeAll)
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception {
+        return Utils.invokeAll(pool, tasks);
     }
 
     /**
@@ -132,19 +214,25 @@ public class HybridGRASP extends SteinerAlgorithm {
      *
      * @param localSolution solution to perform local search on
      * @param localWeight   weight of the localSolution
+     * @param rng           random numbers for the order of the insertion and deletion candidates
      * @param result        update result if better solution is found
      * @return pair of best found solution and its weight
      * @throws Exception key path removal not resulting in 2 subtrees
      */
     private Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> hybridLocalSearch(
             SimpleWeightedGraph<Integer, DefaultWeightedEdge> localSolution,
-            double localWeight, SteinerResult result) throws Exception {
+            double localWeight, RandomGenerator rng, SteinerResult result) throws Exception {
+        DynamicMST dynamicMST = workspace.get().dynamicMST;
+        KeyPathExchange keyPathExchange = workspace.get().keyPathExchange;
+        TranspositionTable table = workspace.get().table;
         boolean improved = true;
         while (improved && Utils.notInterrupted()) {
             improved = false;
 
-            // insertion or deletion
+            // insertion or deletion (moves on the MST of the solution vertices, evaluated as deltas,
+            // vertex sets that are in the transposition table and can't be accepted are skipped)
             boolean localImproved = true;
+            dynamicMST.reset(localSolution.vertexSet());
             while (localImproved && Utils.notInterrupted()) {
                 localImproved = false;
                 HashSet<Integer> insertionCandidates = new HashSet<>(graph.vertexSet());
@@ -152,145 +240,51 @@ public class HybridGRASP extends SteinerAlgorithm {
                 HashSet<Integer> deletionCandidates = new HashSet<>(localSolution.vertexSet());
                 deletionCandidates.removeAll(terminals);
 
+                boolean moved = false;
                 while (!(insertionCandidates.isEmpty() && deletionCandidates.isEmpty())) {
-                    HashSet<Integer> vertices = new HashSet<>(localSolution.vertexSet());
-                    if (!insertionCandidates.isEmpty()) { // insert random vertex from candidates
-                        Integer candidate = Utils.getRandomSetElement(insertionCandidates);
+                    boolean insertion = !insertionCandidates.isEmpty();
+                    Integer candidate;
+                    if (insertion) { // insert random vertex from candidates
+                        candidate = Utils.getRandomSetElement(insertionCandidates, rng);
                         insertionCandidates.remove(candidate);
-                        vertices.add(candidate);
                     } else { // remove random vertex from candidates
-                        Integer candidate = Utils.getRandomSetElement(deletionCandidates);
+                        candidate = Utils.getRandomSetElement(deletionCandidates, rng);
                         deletionCandidates.remove(candidate);
-                        vertices.remove(candidate);
                     }
-                    var newSolution = GraphUtils.getGraphFromSpanningTree(
-                            GraphUtils.getMST(GraphUtils.subgraph(graph, vertices)),
-                            graph
-                    );
-                    double newWeight = GraphUtils.getWeight(newSolution);
-                    if (GraphUtils.verifySteinerTree(graph, terminals, newSolution) && newWeight <= localWeight) {
-                        localSolution = newSolution;
+                    long hash = dynamicMST.vertexHashAfterMove(candidate);
+                    int slot = table.find(hash);
+                    if (slot >= 0 && !(table.isSteinerTree(slot) && table.weight(slot) <= localWeight)) continue;
+                    double newWeight = dynamicMST.getWeight()
+                            + (insertion ? dynamicMST.add(candidate) : dynamicMST.remove(candidate));
+                    table.store(hash, newWeight, dynamicMST.isSteinerTree());
+                    if (dynamicMST.isSteinerTree() && newWeight <= localWeight) {
+                        dynamicMST.commit();
+                        moved = true;
                         if (newWeight < localWeight) {
-                            localWeight = newWeight;
+                            localSolution = dynamicMST.getTree();
+                            localWeight = dynamicMST.getWeight();
+                            assert GraphUtils.verifySteinerTree(graph, terminals, localSolution);
                             localImproved = true;
                             improved = true;
-                            result.updateIfBetter(newSolution, newWeight);
+                            result.updateIfBetter(localSolution, localWeight);
                         }
+                    } else {
+                        dynamicMST.undo();
                     }
                 }
+                if (moved) {
+                    localSolution = dynamicMST.getTree();
+                }
             }
 
             // key-path
             localImproved = true;
-            outer:
             while (localImproved && Utils.notInterrupted()) {
-                localImproved = false;
-                Set<Integer> crucialVs = new HashSet<>(terminals);
-                for (Integer v : localSolution.vertexSet()) {
-                    if (localSolution.edgesOf(v).size() >= 3) {
-                        crucialVs.add(v);
-                    }
-                }
-                var solutionPaths = GraphUtils.getShortestPaths(localSolution);
-//                ShortestPathAlgorithm<Integer, DefaultWeightedEdge> solutionPaths = new DijkstraShortestPath<>(localSolution);
-                for (Integer crucialV : crucialVs) {
-                    for (Integer crucialW : crucialVs) {
-                        Utils.notInterrupted();
-                        if (crucialV < crucialW) {
-                            GraphPath<Integer, DefaultWeightedEdge> path = solutionPaths.getPath(crucialV, crucialW);
-                            List<Integer> vertexList = path.getVertexList();
-                            long count = vertexList.stream().filter(crucialVs::contains).count();
-                            if (count == 2) { // only the start and end of the path are crucial vertices
-
-                                // remove key path (remove internal vertices and their incident edges (implicitly))
-                                Set<Integer> verticesToAdd = new HashSet<>(vertexList.subList(1, vertexList.size() - 1));
-                                Set<DefaultWeightedEdge> edgesToAdd = new HashSet<>(
-                                        verticesToAdd
-                                                .stream()
-                                                .map(localSolution::edgesOf)
-                                                .flatMap(Collection::stream)
-                                                .toList()
-                                );
-                                if (vertexList.size() == 2) {
-                                    DefaultWeightedEdge edge = localSolution.removeEdge(crucialV, crucialW);
-                                    edgesToAdd.add(edge);
-                                }
-                                localSolution.removeAllVertices(verticesToAdd);
-                                double costToRestore = edgesToAdd
-                                        .stream()
-                                        .mapToDouble(localSolution::getEdgeWeight)
-                                        .sum();
-
-                                // get 2 subtrees
-                                var inspector = new ConnectivityInspector<>(localSolution);
-                                List<Set<Integer>> connectedComponents = inspector.connectedSets();
-                                if (connectedComponents.size() != 2) {
-                                    throw new Exception(
-                                            "removing a key path \"" + vertexList
-                                                    + "\" didn't result in 2 subtrees, this should be impossible!"
-                                    );
-                                }
-
-                                // connect 2 subtrees
-                                double bestWeight = Double.POSITIVE_INFINITY;
-                                GraphPath<Integer, DefaultWeightedEdge> bestPath = null;
-                                for (Integer vA : connectedComponents.get(0)) {
-                                    for (Integer vB : connectedComponents.get(1)) {
-                                        var connectionPath = solutionPaths.getPath(vA, vB);
-                                        Set<DefaultWeightedEdge> edges = new HashSet<>(connectionPath.getEdgeList());
-                                        edges.removeAll(localSolution.edgeSet());
-                                        double pathWeight = edges.stream().mapToDouble(this.graph::getEdgeWeight).sum();
-                                        if (pathWeight < bestWeight) {
-                                            bestWeight = pathWeight;
-                                            bestPath = connectionPath;
-                                        }
-                                    }
-                                }
-
-                                Set<DefaultWeightedEdge> edges = new HashSet<>(bestPath.getEdgeList());
-                                edges.removeAll(localSolution.edgeSet());
-                                Set<Integer> vertices = new HashSet<>(bestPath.getVertexList());
-                                vertices.removeAll(localSolution.vertexSet());
-
-                                //construct new solution
-                                vertices.forEach(localSolution::addVertex);
-                                Set<Integer> verticesToRemove = new HashSet<>(vertices);
-                                for (DefaultWeightedEdge edge : edges) {
-                                    localSolution.addEdge(
-                                            localSolution.getEdgeSource(edge),
-                                            localSolution.getEdgeTarget(edge),
-                                            edge
-                                    );
-                                }
-                                Set<DefaultWeightedEdge> edgesToRemove = new HashSet<>(edges);
-
-                                // check new solution
-                                double newWeight = localWeight - costToRestore + bestWeight;
-                                if (GraphUtils.verifySteinerTree(
-                                        this.graph,
-                                        this.terminals,
-                                        localSolution) && newWeight < localWeight) {
-                                    localWeight = newWeight;
-                                    result.setSmt(localSolution);
-                                    result.setWeight(localWeight);
-                                    localImproved = true;
-                                    improved = true;
-                                    continue outer;
-                                }
-
-                                //restore graph if solution wasn't improved
-                                edgesToRemove.forEach(localSolution::removeEdge);
-                                verticesToRemove.forEach(localSolution::removeVertex);
-                                verticesToAdd.forEach(localSolution::addVertex);
-                                for (DefaultWeightedEdge edge : edgesToAdd) {
-                                    localSolution.addEdge(
-                                            localSolution.getEdgeSource(edge),
-                                            localSolution.getEdgeTarget(edge),
-                                            edge);
-                                }
-                            }
-                        }
-                    }
+                localImproved = keyPathExchange.improve(localSolution) > 0;
+                if (localImproved) {
+                    localWeight = GraphUtils.getWeight(localSolution);
+                    improved = true;
+                    result.updateIfBetter(localSolution, localWeight);
                 }
             }
         }
@@ -300,78 +294,85 @@ public class HybridGRASP extends SteinerAlgorithm {
     /**
      * generic loop structure for performing path relinking until no improvement is found
      *
-     * @param eliteSolutions list of elite solutions
+     * @param eliteSolutions pool of elite solutions
      * @param result         result to be updated
      * @param relinkingType  type of path relinking strategy that is used
      * @return best iteration of elite solutions
      * @throws Exception key path removal not resulting in 2 subtrees
      */
-    private List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> PathRelinkingLoop(
-            List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutions,
+    private ElitePool PathRelinkingLoop(
+            ElitePool eliteSolutions,
             SteinerResult result,
             RelinkingType relinkingType
     ) throws Exception {
-        List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> tempSolutions;
-        List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutionsNext = eliteSolutions;
+        ElitePool tempSolutions;
+        ElitePool eliteSolutionsNext = eliteSolutions;
         do {
-            Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> first = eliteSolutionsNext.get(0);
-            result.updateIfBetter(first.getSecond(), first.getFirst());
+            updateResult(result, eliteSolutionsNext.best());
             Logger.debug("start elite solutions iteration");
             tempSolutions = eliteSolutionsNext;
+            List<Solution> temp = tempSolutions.asList();
             eliteSolutionsNext = switch (relinkingType) {
-                case COMPLEMENTARY_MOVES -> complementaryPathRelinking(tempSolutions, tempSolutions);
-                case WEIGHT_PENALIZATION -> weightPenalizationPathRelinking(tempSolutions, tempSolutions, result);
-                case HYBRID -> hybridPathRelinking(tempSolutions, result);
+                case COMPLEMENTARY_MOVES -> complementaryPathRelinking(temp, temp);
+                case WEIGHT_PENALIZATION -> weightPenalizationPathRelinking(temp, temp, result);
+                case HYBRID -> hybridPathRelinking(temp, result);
             };
-            eliteSolutionsNext.sort(Comparator.comparing(Pair::getFirst));
-            tempSolutions.sort(Comparator.comparing(Pair::getFirst));
             Logger.debug("eliteSolutionsNext: " + eliteSolutionsNext);
             Logger.debug("tempSolutions: " + tempSolutions);
-        } while (!eliteSolutionsNext.isEmpty() && eliteSolutionsNext.get(0).getFirst() < tempSolutions.get(0).getFirst()
+        } while (!eliteSolutionsNext.isEmpty() && eliteSolutionsNext.best().getWeight() < tempSolutions.best().getWeight()
                 && Utils.notInterrupted());
         return tempSolutions;
     }
 
     /**
      * combination of complementary- and 'weight penalization'- path relinking
+     * * both strategies relink the pairs with the best solution, at the same time
+     * * the strategy with the lightest result on these pairs relinks the other pairs (ties: complementary moves),
+     * *        so the choice doesn't depend on the scheduling
+     * the results are inserted in task order
      *
-     * @param eliteSolutions list of elite solutions
+     * @param eliteSolutions elite solutions, lightest first
      * @param result         result to be updated
      * @return next generation of elite solutions
      * @throws Exception key path removal not resulting in 2 subtrees
      */
-    private List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> hybridPathRelinking(
-            List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutions,
-            SteinerResult result) throws Exception {
+    private ElitePool hybridPathRelinking(List<Solution> eliteSolutions, SteinerResult result) throws Exception {
         Logger.debug("start hybridPathRelinking");
-        eliteSolutions.sort(Comparator.comparing(Pair::getFirst));
-        Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> best = eliteSolutions.remove(0);
-        // handle pairs with best solution separately
-        var bestList = List.of(best);
-        long start = System.nanoTime();
-        var tempSolutions = complementaryPathRelinking(
-                eliteSolutions,
-                bestList
-        );
-        long time1 = System.nanoTime() - start;
-        start = System.nanoTime();
-        var weightPenalizationList = weightPenalizationPathRelinking(
-                eliteSolutions,
-                bestList,
-                result
-        );
-        long time2 = System.nanoTime() - start;
-        weightPenalizationList.forEach(p -> insertEliteSolution(tempSolutions, p.getSecond(), p.getFirst()));
-        // handle other pairs using fastest method of best pairs
-        List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> temp;
-        if (time1 < time2) {
-            temp = complementaryPathRelinking(eliteSolutions, eliteSolutions);
-        } else {
-            temp = weightPenalizationPathRelinking(eliteSolutions, eliteSolutions, result);
-        }
-        temp.forEach(p -> insertEliteSolution(tempSolutions, p.getSecond(), p.getFirst()));
-        eliteSolutions.add(best);
-        return tempSolutions;
+        List<Solution> others = eliteSolutions.subList(1, eliteSolutions.size());
+        // handle pairs with best solution separately, both strategies at the same time
+        List<Solution> bestList = List.of(eliteSolutions.get(0));
+        List<Callable<Solution>> bestPairs = new ArrayList<>(complementaryPairs(others, bestList));
+        int complementaryCount = bestPairs.size();
+        bestPairs.addAll(weightPenalizationPairs(others, bestList, result));
+        List<Solution> bestResults = invokeAll(bestPairs);
+        double complementaryWeight = lightest(bestResults.subList(0, complementaryCount));
+        double penalizedWeight = lightest(bestResults.subList(complementaryCount, bestResults.size()));
+        ElitePool eliteSolutionsNext = new ElitePool(ELITE_SIZE);
+        bestResults.forEach(eliteSolutionsNext::insert);
+        // handle other pairs using the method with the lightest result on the best pairs
+        List<Callable<Solution>> otherPairs = penalizedWeight < complementaryWeight
+                ? weightPenalizationPairs(others, others, result)
+                : complementaryPairs(others, others);
+        invokeAll(otherPairs).forEach(eliteSolutionsNext::insert);
+        return eliteSolutionsNext;
+    }
+
+    /**
+     * @return weight of the lightest solution, infinity if there is none
+     */
+    private static double lightest(List<Solution> solutions) {
+        return solutions.stream().mapToDouble(Solution::getWeight).min().orElse(Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param pairs relinking tasks, one per pair
+     * @return elite pool of the results, inserted in task order
+     * @throws Exception key path removal not resulting in 2 subtrees
+     */
+    private ElitePool relink(List<Callable<Solution>> pairs) throws Exception {
+        ElitePool eliteSolutionsNext = new ElitePool(ELITE_SIZE);
+        invokeAll(pairs).forEach(eliteSolutionsNext::insert);
+        return eliteSolutionsNext;
     }
 
     /**
@@ -379,6 +380,8 @@ public class HybridGRASP extends SteinerAlgorithm {
      * edge weights are modified based on the appearance of edges in either or both solutions in a pair
      * pairs are formed using a solution from both lists
      * in general both lists should be passed the same, except for hybridPathelinking, which handles this slightly differently
+     * the pairs are handled in parallel (see invokeAll), every pair has its own random stream and the results are
+     * inserted in pair order
      *
      * @param eliteSolutions1 list of elite solutions
      * @param eliteSolutions2 list of elite solutions
@@ -386,47 +389,74 @@ public class HybridGRASP extends SteinerAlgorithm {
      * @return next iteration of elite solutions
      * @throws Exception key path removal not resulting in 2 subtrees
      */
-    private List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> weightPenalizationPathRelinking(
-            List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutions1,
-            List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutions2,
+    private ElitePool weightPenalizationPathRelinking(
+            List<Solution> eliteSolutions1,
+            List<Solution> eliteSolutions2,
             SteinerResult result
     ) throws Exception {
         Logger.debug("start weightPenalizationPathRelinking");
-        List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutionsNext = new ArrayList<>();
-        ShortestPathHeuristic sph = new ShortestPathHeuristic();
-        for (Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> pair1 : eliteSolutions1) {
-            for (Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> pair2 : eliteSolutions2) {
-                Utils.notInterrupted();
-                SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph1 = pair1.getSecond();
-                SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph2 = pair2.getSecond();
-                HashMap<DefaultWeightedEdge, Double> weights = new HashMap<>();
-                for (DefaultWeightedEdge edge : graph.edgeSet()) {
-                    Integer source = graph.getEdgeSource(edge);
-                    Integer target = graph.getEdgeTarget(edge);
-                    boolean contains1 = graph1.containsEdge(source, target);
-                    boolean contains2 = graph2.containsEdge(source, target);
-                    if (contains1 ^ contains2) {
-                        weights.put(edge, graph.getEdgeWeight(edge) * random.nextDouble(50., 100.));
-                    } else if (contains1) {
-                        weights.put(edge, graph.getEdgeWeight(edge));
-                    } else {
-                        weights.put(edge, graph.getEdgeWeight(edge) * 2000.);
-                    }
-                }
-                SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution = sph.constructSolution(
-                        graph,
-                        terminals,
-                        weights
-                );
-                Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> pair = hybridLocalSearch(
-                        solution,
-                        GraphUtils.getWeight(solution),
-                        result
-                );
-                insertEliteSolution(eliteSolutionsNext, pair.getSecond(), pair.getFirst());
+        return relink(weightPenalizationPairs(eliteSolutions1, eliteSolutions2, result));
+    }
+
+    /**
+     * @return a weight penalization task for every pair, the random streams are seeded here, in pair order
+     */
+    private List<Callable<Solution>> weightPenalizationPairs(
+            List<Solution> eliteSolutions1,
+            List<Solution> eliteSolutions2,
+            SteinerResult result
+    ) {
+        List<Callable<Solution>> pairs = new ArrayList<>();
+        for (Solution solution1 : eliteSolutions1) {
+            for (Solution solution2 : eliteSolutions2) {
+                // random stream of the pair, seeded in pair order
+                SplittableRandom rng = new SplittableRandom(random.nextLong());
+                pairs.add(() -> penalizedSolution(solution1, solution2, rng, result));
             }
         }
-        return eliteSolutionsNext;
+        return pairs;
+    }
+
+    /**
+     * weight penalization for one pair of elite solutions:
+     * construct a solution (SPH) with the penalized weights and apply local search to it
+     *
+     * @param solution1 elite solution
+     * @param solution2 elite solution
+     * @param rng       random numbers of the pair
+     * @param result    result to be updated
+     * @return the solution after local search
+     * @throws Exception key path removal not resulting in 2 subtrees
+     */
+    private Solution penalizedSolution(Solution solution1, Solution solution2, RandomGenerator rng,
+                                       SteinerResult result) throws Exception {
+        Utils.notInterrupted();
+        CompactGraph compact = getCompactGraph();
+        double[] weights = new double[compact.edgeCount()];
+        for (int e = 0; e < weights.length; e++) {
+            boolean contains1 = solution1.containsEdge(e);
+            boolean contains2 = solution2.containsEdge(e);
+            if (contains1 ^ contains2) {
+                weights[e] = compact.edgeWeight(e) * rng.nextDouble(50., 100.);
+            } else if (contains1) {
+                weights[e] = compact.edgeWeight(e);
+            } else {
+                weights[e] = compact.edgeWeight(e) * 2000.;
+            }
+        }
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution = new ShortestPathHeuristic().constructSolution(
+                compact,
+                terminals,
+                weights,
+                rng
+        );
+        Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> pair = hybridLocalSearch(
+                solution,
+                GraphUtils.getWeight(solution),
+                rng,
+                result
+        );
+        return Solution.of(compact, pair.getSecond(), pair.getFirst());
     }
 
     /**
@@ -434,121 +464,184 @@ public class HybridGRASP extends SteinerAlgorithm {
      * basic idea: for each pair of elite solutions:
      * *           - - move from one solution to the other
      * *           - - remember best solution on this trajectory
+     * the pairs are relinked in parallel (see invokeAll), their results are inserted in pair order
      *
      * @param eliteSolutions1 list of elite solutions
      * @param eliteSolutions2 list of elite solutions
      * @return next iteration of elite solutions
+     * @throws Exception timeout
      */
-    private List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> complementaryPathRelinking(
-            List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutions1,
-            List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutions2) throws InterruptedException {
+    private ElitePool complementaryPathRelinking(
+            List<Solution> eliteSolutions1,
+            List<Solution> eliteSolutions2) throws Exception {
         Logger.debug("start complementaryPathRelinking");
-        List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutionsNext = new ArrayList<>();
-        for (Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> initial : eliteSolutions1) {
-            for (Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> guiding : eliteSolutions2) {
-                Utils.notInterrupted();
+        return relink(complementaryPairs(eliteSolutions1, eliteSolutions2));
+    }
+
+    /**
+     * @return a complementary moves task for every pair of different solutions
+     */
+    private List<Callable<Solution>> complementaryPairs(List<Solution> eliteSolutions1, List<Solution> eliteSolutions2) {
+        List<Callable<Solution>> pairs = new ArrayList<>();
+        for (Solution initial : eliteSolutions1) {
+            for (Solution guiding : eliteSolutions2) {
                 if (initial != guiding) {
-                    SimpleWeightedGraph<Integer, DefaultWeightedEdge> initialGraph = initial.getSecond();
-                    SimpleWeightedGraph<Integer, DefaultWeightedEdge> guidingGraph = guiding.getSecond();
-                    Set<Integer> symmetricDiff = Utils.diff(initialGraph.vertexSet(), guidingGraph.vertexSet());
-                    // while guiding solution isn't yet attained by initial solution
-                    SimpleWeightedGraph<Integer, DefaultWeightedEdge> currentGraph = initialGraph;
-                    SimpleWeightedGraph<Integer, DefaultWeightedEdge> temp;
-                    SimpleWeightedGraph<Integer, DefaultWeightedEdge> best = initialGraph;
-                    double bestWeight = initial.getFirst();
-                    while (!symmetricDiff.isEmpty()) {
-                        SimpleWeightedGraph<Integer, DefaultWeightedEdge> localBest = null;
-                        double localBestWeight = Double.POSITIVE_INFINITY;
-                        Integer bestMove = -1;
-                        Integer lastMove = -1;
-                        // try every move left to pick best move next
-                        for (Integer move : symmetricDiff) {
-                            Set<Integer> vertices = new HashSet<>(currentGraph.vertexSet());
-                            if (vertices.contains(move)) {
-                                vertices.remove(move);
-                            } else {
-                                vertices.add(move);
-                            }
-                            temp = GraphUtils.getGraphFromSpanningTree(
-                                    GraphUtils.getMST(GraphUtils.subgraph(graph, vertices)),
-                                    graph
-                            );
-                            double tempWeight = GraphUtils.getWeight(temp);
-                            if (GraphUtils.verifySteinerTree(graph, terminals, temp) && tempWeight <= localBestWeight) {
-                                localBest = temp;
-                                localBestWeight = tempWeight;
-                                bestMove = move;
-                            }
-                            lastMove = move;
-                        }
-                        if (bestMove != -1) {
-                            symmetricDiff.remove(bestMove);
-                            currentGraph = localBest;
-                            if (localBestWeight < bestWeight) {
-                                best = localBest;
-                                bestWeight = localBestWeight;
-                            }
-                        } else {
-                            symmetricDiff.remove(lastMove);
-                        }
-                    }
-                    insertEliteSolution(eliteSolutionsNext, best, bestWeight);
+                    pairs.add(() -> relinkPair(initial, guiding));
                 }
             }
         }
-        return eliteSolutionsNext;
+        return pairs;
     }
 
     /**
-     * try to insert a solution into a list of elite solutions
-     * * solution gets inserted if the list of elite solutions is not full
-     * * OR if the solution is better than the worst elite solution in the list
+     * complementary moves for one pair of elite solutions
      *
-     * @param eliteSolutions list of elite solutions to try inserting into
-     * @param solution       solution to try to insert
-     * @param weight         weight of solution
+     * @param initial solution to start from
+     * @param guiding solution to move to
+     * @return best solution on the trajectory
+     * @throws InterruptedException timeout
      */
-    private void insertEliteSolution(
-            List<Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>>> eliteSolutions,
-            SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution, double weight) {
-        eliteSolutions.sort(Comparator.comparing(Pair::getFirst));
-        if ((eliteSolutions.size() < ELITE_SIZE || eliteSolutions.get(eliteSolutions.size() - 1).getFirst() > weight)
-                && eliteSolutions.stream().noneMatch(sol -> GraphUtils.equals(sol.getSecond(), solution))) {
-            Pair<Double, SimpleWeightedGraph<Integer, DefaultWeightedEdge>> pair = new Pair<>(weight, solution);
-            if (eliteSolutions.size() >= ELITE_SIZE) {
-                eliteSolutions.remove(eliteSolutions.size() - 1);
+    private Solution relinkPair(Solution initial, Solution guiding) throws InterruptedException {
+        Utils.notInterrupted();
+        DynamicMST dynamicMST = workspace.get().dynamicMST;
+        TranspositionTable table = workspace.get().table;
+        Set<Integer> initialVertices = initial.vertexSet();
+        Set<Integer> symmetricDiff = Utils.diff(initialVertices, guiding.vertexSet());
+        // while guiding solution isn't yet attained by initial solution
+        // the current solution is the MST of its vertices, every move is evaluated on it and undone
+        dynamicMST.reset(initialVertices);
+        Solution best = initial;
+        double bestWeight = initial.getWeight();
+        while (!symmetricDiff.isEmpty()) {
+            double currentWeight = dynamicMST.getWeight();
+            double localBestWeight = Double.POSITIVE_INFINITY;
+            Integer bestMove = -1;
+            Integer lastMove = -1;
+            // try every move left to pick best move next (vertex sets in the transposition table are not evaluated)
+            for (Integer move : symmetricDiff) {
+                long hash = dynamicMST.vertexHashAfterMove(move);
+                int slot = table.find(hash);
+                double tempWeight;
+                boolean steinerTree;
+                if (slot >= 0) {
+                    tempWeight = table.weight(slot);
+                    steinerTree = table.isSteinerTree(slot);
+                } else {
+                    tempWeight = currentWeight + applyMove(dynamicMST, move);
+                    steinerTree = dynamicMST.isSteinerTree();
+                    table.store(hash, tempWeight, steinerTree);
+                    dynamicMST.undo();
+                }
+                if (steinerTree && tempWeight <= localBestWeight) {
+                    localBestWeight = tempWeight;
+                    bestMove = move;
+                }
+                lastMove = move;
+            }
+            if (bestMove != -1) {
+                symmetricDiff.remove(bestMove);
+                applyMove(dynamicMST, bestMove);
+                if (!dynamicMST.isSteinerTree()) {
+                    // hash collision in the transposition table
+                    dynamicMST.undo();
+                    continue;
+                }
+                dynamicMST.commit();
+                if (dynamicMST.getWeight() < bestWeight) {
+                    best = Solution.of(getCompactGraph(), dynamicMST.getState());
+                    bestWeight = best.getWeight();
+                    assert GraphUtils.verifySteinerTree(graph, terminals, dynamicMST.getTree());
+                }
+            } else {
+                symmetricDiff.remove(lastMove);
             }
-            eliteSolutions.add(pair);
+        }
+        return best;
+    }
+
+    /**
+     * insert the vertex into the solution vertices of the dynamic MST, or remove it if it is one of them
+     *
+     * @param move vertex to insert or remove
+     * @return weight change of the MST
+     */
+    private static double applyMove(DynamicMST dynamicMST, Integer move) {
+        return dynamicMST.contains(move) ? dynamicMST.remove(move) : dynamicMST.add(move);
+    }
+
+    /**
+     * replace the solution in the result if the elite solution is better (only then its graph is built)
+     *
+     * @param result   result to be updated
+     * @param solution elite solution
+     */
+    private static void updateResult(SteinerResult result, Solution solution) {
+        if (solution.getWeight() < result.getWeight()) {
+            result.updateIfBetter(solution.toGraph(), solution.getWeight());
+        }
+    }
+
+    /**
+     * @return number of moves of the last run that were answered by a transposition table (all threads)
+     */
+    public long getTranspositionHits() {
+        synchronized (workspaces) {
+            return workspaces.stream().mapToLong(w -> w.table.hits()).sum();
+        }
+    }
+
+    /**
+     * @return number of moves of the last run that had to be evaluated (all threads)
+     */
+    public long getTranspositionMisses() {
+        synchronized (workspaces) {
+            return workspaces.stream().mapToLong(w -> w.table.misses()).sum();
+        }
+    }
+
+    /**
+     * local search structures, they are not thread-safe so every thread gets its own
+     */
+    private static final class Workspace {
+        private final KeyPathExchange keyPathExchange;
+        private final DynamicMST dynamicMST;
+        private final TranspositionTable table;
+
+        private Workspace(CompactGraph graph, Set<Integer> terminals) {
+            this.keyPathExchange = new KeyPathExchange(graph, terminals);
+            this.dynamicMST = new DynamicMST(graph, terminals);
+            this.table = new TranspositionTable(Utils.transpositionTableSize);
         }
     }
 
     /**
      * weight perturbation methods (these are alternated in the GRASP iterations)
+     * tI1 / counted is the share of the counted local search solutions an edge appeared in
      */
     private enum PerturbationEnum {
         /* intensification */
         I {
             @Override
-            double getCoefficient(int tI1, int i) {
-                return 2 - 0.75 * tI1 / (i - 1);
+            double getCoefficient(int tI1, int counted) {
+                return 2 - 0.75 * tI1 / counted;
             }
         },
         /* diversification */
         D {
             @Override
-            double getCoefficient(int tI1, int i) {
-                return 1.25 + 0.75 * tI1 / (i - 1);
+            double getCoefficient(int tI1, int counted) {
+                return 1.25 + 0.75 * tI1 / counted;
             }
         },
         /* uniform penalization */
         U {
             @Override
-            double getCoefficient(int tI1, int i) {
+            double getCoefficient(int tI1, int counted) {
                 return 2;
             }
         };
 
-        abstract double getCoefficient(int tI1, int i);
+        abstract double getCoefficient(int tI1, int counted);
     }
 
     /**
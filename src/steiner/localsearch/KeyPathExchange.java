@@ -0,0 +1,302 @@
+package steiner.localsearch;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import utils.Utils;
+import utils.graphextensions.CompactGraph;
+import utils.graphextensions.IndexedMinHeap;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * key path exchange on a steiner tree, shared by the local searches
+ * * key vertices: terminals and vertices of degree >= 3, a key path connects 2 key vertices through steiner vertices
+ *          of degree 2 only
+ * * one dfs over the tree (from a terminal) gives every key path: walk up from each key vertex to the next one,
+ *          removing it splits the tree into the dfs subtree below it and the rest
+ * * the cheapest reconnection is a dijkstra from every vertex of the smaller part, it stops at the first vertex of the
+ *          other part, or as soon as the distance reaches the weight of the key path (no improvement possible)
+ * * non-terminal leaves are pruned first
+ * !the workspace is reused by every call, so an instance must not be shared between threads
+ */
+public class KeyPathExchange {
+
+    private final CompactGraph graph;
+    private final boolean[] isTerminal;
+
+    // tree over the vertex indices
+    private final boolean[] inTree;
+    private final int[] treeVertices;
+    private int treeVertexCount;
+    private final boolean[] treeEdge;
+    private final int[] treeDegree;
+    private final int[] treeEdges;
+    private int treeEdgeCount;
+    // dfs: parent edge, preorder, position in the preorder and subtree size of each tree vertex
+    private final int[] parentEdge;
+    private final int[] order;
+    private final int[] position;
+    private final int[] subtreeSize;
+    private int treeSize;
+
+    // internal vertices of the current key path
+    private final boolean[] removed;
+    private final int[] internal;
+
+    // bounded dijkstra
+    private final double[] dist;
+    private final int[] pred;
+    private final int[] touched;
+    private int touchedCount;
+    private final IndexedMinHeap heap;
+
+    public KeyPathExchange(CompactGraph graph, Set<Integer> terminals) {
+        this.graph = graph;
+        int n = graph.vertexCount();
+        this.isTerminal = new boolean[n];
+        terminals.forEach(t -> isTerminal[graph.indexOf(t)] = true);
+        this.inTree = new boolean[n];
+        this.treeVertices = new int[n];
+        this.treeEdge = new boolean[graph.edgeCount()];
+        this.treeDegree = new int[n];
+        this.treeEdges = new int[n];
+        this.parentEdge = new int[n];
+        this.order = new int[n];
+        this.position = new int[n];
+        this.subtreeSize = new int[n];
+        this.removed = new boolean[n];
+        this.internal = new int[n];
+        this.dist = new double[n];
+        this.pred = new int[n];
+        this.touched = new int[n];
+        this.heap = new IndexedMinHeap(n);
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * apply the first improving key path exchange (or leaf pruning) to the tree
+     *
+     * @param tree steiner tree, changed in place, its edge weights must be the weights of the graph
+     * @return weight the tree lost (0 if no improving exchange exists)
+     * @throws InterruptedException timeout
+     */
+    public double improve(SimpleWeightedGraph<Integer, DefaultWeightedEdge> tree) throws InterruptedException {
+        try {
+            if (!load(tree)) return 0d;
+            // (pruned vertices are no longer in the tree, the dfs stays valid for the remaining vertices)
+            double pruned = pruneLeaves(tree);
+            if (pruned > 0) return pruned;
+
+            for (int i = 1; i < treeSize; i++) {
+                int v = order[i];
+                if (!isKey(v)) continue;
+                Utils.notInterrupted();
+                // walk up to the next key vertex
+                double pathWeight = 0d;
+                int internalCount = 0;
+                int u = v;
+                while (true) {
+                    int e = parentEdge[u];
+                    pathWeight += graph.edgeWeight(e);
+                    u = graph.opposite(e, u);
+                    if (isKey(u)) break;
+                    removed[u] = true;
+                    internal[internalCount++] = u;
+                }
+
+                boolean fromSubtree = subtreeSize[v] <= treeSize - subtreeSize[v] - internalCount;
+                int target = reconnect(v, fromSubtree, pathWeight);
+                if (target >= 0) {
+                    double gain = pathWeight - dist[target];
+                    exchange(tree, v, u, internalCount, target);
+                    return gain;
+                }
+                resetSearch();
+                for (int j = 0; j < internalCount; j++) {
+                    removed[internal[j]] = false;
+                }
+            }
+            return 0d;
+        } finally {
+            resetSearch();
+            clear();
+        }
+    }
+
+    /**
+     * index the tree and run the dfs from a terminal
+     *
+     * @return whether the tree is a connected tree with at least 2 vertices
+     */
+    private boolean load(SimpleWeightedGraph<Integer, DefaultWeightedEdge> tree) {
+        int root = -1;
+        for (Integer vertex : tree.vertexSet()) {
+            int v = graph.indexOf(vertex);
+            inTree[v] = true;
+            treeVertices[treeVertexCount++] = v;
+            if (root < 0 && isTerminal[v]) root = v;
+        }
+        for (DefaultWeightedEdge edge : tree.edgeSet()) {
+            int u = graph.indexOf(tree.getEdgeSource(edge));
+            int v = graph.indexOf(tree.getEdgeTarget(edge));
+            int e = graph.getEdge(u, v);
+            if (treeEdgeCount == treeEdges.length) return false;
+            treeEdge[e] = true;
+            treeEdges[treeEdgeCount++] = e;
+            treeDegree[u]++;
+            treeDegree[v]++;
+        }
+        if (root < 0 || tree.vertexSet().size() < 2 || treeEdgeCount != tree.vertexSet().size() - 1) return false;
+
+        // iterative dfs, the children of a vertex are pushed together so every subtree is a range of the preorder
+        int[] stack = pred;
+        int stackSize = 0;
+        stack[stackSize++] = root;
+        parentEdge[root] = -1;
+        while (stackSize > 0) {
+            int u = stack[--stackSize];
+            position[u] = treeSize;
+            order[treeSize++] = u;
+            subtreeSize[u] = 1;
+            for (int s = graph.slotStart(u); s < graph.slotEnd(u); s++) {
+                int e = graph.slotEdge(s);
+                if (treeEdge[e] && e != parentEdge[u]) {
+                    int v = graph.slotTarget(s);
+                    parentEdge[v] = e;
+                    stack[stackSize++] = v;
+                }
+            }
+        }
+        for (int i = treeSize - 1; i > 0; i--) {
+            int u = order[i];
+            subtreeSize[graph.opposite(parentEdge[u], u)] += subtreeSize[u];
+        }
+        return treeSize == tree.vertexSet().size();
+    }
+
+    /**
+     * remove non-terminal leaves (and the paths of steiner vertices leading to them)
+     *
+     * @return weight of the removed edges
+     */
+    private double pruneLeaves(SimpleWeightedGraph<Integer, DefaultWeightedEdge> tree) {
+        double pruned = 0d;
+        // children come after their parent in the preorder, so chains are removed bottom-up
+        for (int i = treeSize - 1; i > 0; i--) {
+            int u = order[i];
+            if (!isTerminal[u] && treeDegree[u] == 1) {
+                int e = parentEdge[u];
+                treeDegree[graph.opposite(e, u)]--;
+                treeDegree[u] = 0;
+                inTree[u] = false;
+                pruned += graph.edgeWeight(e);
+                tree.removeVertex(graph.vertexId(u));
+            }
+        }
+        return pruned;
+    }
+
+    private boolean isKey(int v) {
+        return isTerminal[v] || treeDegree[v] >= 3;
+    }
+
+    /**
+     * @return whether tree vertex x is in the subtree of v
+     */
+    private boolean inSubtree(int v, int x) {
+        return position[x] >= position[v] && position[x] < position[v] + subtreeSize[v];
+    }
+
+    /**
+     * @return whether x is a vertex of the part of the tree the search starts from
+     */
+    private boolean isSource(int v, boolean fromSubtree, int x) {
+        return inTree[x] && !removed[x] && inSubtree(v, x) == fromSubtree;
+    }
+
+    /**
+     * dijkstra from one part of the tree without the key path above v to the other part
+     *
+     * @param bound weight of the key path
+     * @return first vertex of the other part that is reached with a distance below bound, -1 if there is none
+     */
+    private int reconnect(int v, boolean fromSubtree, double bound) {
+        for (int i = 0; i < treeSize; i++) {
+            int x = order[i];
+            if (isSource(v, fromSubtree, x)) {
+                dist[x] = 0d;
+                pred[x] = -1;
+                touched[touchedCount++] = x;
+                heap.insertOrDecrease(x, 0d);
+            }
+        }
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double du = dist[u];
+            if (du >= bound) return -1;
+            if (inTree[u] && !removed[u] && !isSource(v, fromSubtree, u)) return u;
+            for (int s = graph.slotStart(u); s < graph.slotEnd(u); s++) {
+                int x = graph.slotTarget(s);
+                if (isSource(v, fromSubtree, x)) continue;
+                int e = graph.slotEdge(s);
+                double dx = du + graph.edgeWeight(e);
+                if (dx < dist[x]) {
+                    if (dist[x] == Double.POSITIVE_INFINITY) touched[touchedCount++] = x;
+                    dist[x] = dx;
+                    pred[x] = e;
+                    heap.insertOrDecrease(x, dx);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * replace the key path between v and its upper key vertex u by the path found by reconnect
+     */
+    private void exchange(SimpleWeightedGraph<Integer, DefaultWeightedEdge> tree, int v, int u, int internalCount,
+                          int target) {
+        if (internalCount == 0) {
+            tree.removeEdge(graph.vertexId(v), graph.vertexId(u));
+        }
+        for (int j = 0; j < internalCount; j++) {
+            tree.removeVertex(graph.vertexId(internal[j]));
+        }
+        int x = target;
+        while (pred[x] >= 0) {
+            int e = pred[x];
+            int y = graph.opposite(e, x);
+            Integer vertexX = graph.vertexId(x);
+            Integer vertexY = graph.vertexId(y);
+            tree.addVertex(vertexX);
+            tree.addVertex(vertexY);
+            DefaultWeightedEdge edge = tree.addEdge(vertexX, vertexY);
+            tree.setEdgeWeight(edge, graph.edgeWeight(e));
+            x = y;
+        }
+    }
+
+    private void resetSearch() {
+        for (int i = 0; i < touchedCount; i++) {
+            dist[touched[i]] = Double.POSITIVE_INFINITY;
+        }
+        touchedCount = 0;
+        heap.clear();
+    }
+
+    private void clear() {
+        for (int i = 0; i < treeVertexCount; i++) {
+            int v = treeVertices[i];
+            inTree[v] = false;
+            removed[v] = false;
+            treeDegree[v] = 0;
+        }
+        for (int i = 0; i < treeEdgeCount; i++) {
+            treeEdge[treeEdges[i]] = false;
+        }
+        treeVertexCount = 0;
+        treeEdgeCount = 0;
+        treeSize = 0;
+    }
+}
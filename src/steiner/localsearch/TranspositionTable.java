@@ -0,0 +1,95 @@
+package steiner.localsearch;
+
+/**
+ * transposition table: bounded cache of the vertex sets the local searches already evaluated,
+ * by zobrist hash of the set (see SolutionState.vertexHash)
+ * * an entry holds the weight of the MST of the set and whether that MST is a steiner tree
+ * * direct mapped: a set goes to slot hash & (capacity - 1), a new entry evicts the old one
+ * *        (the most recent sets are the ones that are revisited)
+ * * the full 64 bit hash is compared on lookup
+ * * hits and misses are counted, to tune the capacity
+ * !a hit is a hint: 2 sets with the same hash are possible (if unlikely), so only rejected moves should be skipped,
+ * a move that is accepted still has to be applied and checked
+ * !not thread-safe, every local search thread has its own table
+ */
+public class TranspositionTable {
+
+    private final long[] keys;
+    private final double[] weights;
+    private final boolean[] steinerTree;
+    private final boolean[] used;
+    private final int mask;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity number of entries (rounded up to a power of 2)
+     */
+    public TranspositionTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.keys = new long[size];
+        this.weights = new double[size];
+        this.steinerTree = new boolean[size];
+        this.used = new boolean[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @param hash hash of the vertex set
+     * @return slot of the set, -1 if the set is not in the table
+     */
+    public int find(long hash) {
+        int slot = slot(hash);
+        if (used[slot] && keys[slot] == hash) {
+            hits++;
+            return slot;
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * @return weight of the MST of the set in the slot
+     */
+    public double weight(int slot) {
+        return weights[slot];
+    }
+
+    /**
+     * @return whether the MST of the set in the slot is a steiner tree
+     */
+    public boolean isSteinerTree(int slot) {
+        return steinerTree[slot];
+    }
+
+    /**
+     * add the evaluation of a vertex set (evicting the set in its slot)
+     *
+     * @param hash        hash of the vertex set
+     * @param weight      weight of the MST of the set
+     * @param steinerTree whether the MST is a steiner tree
+     */
+    public void store(long hash, double weight, boolean steinerTree) {
+        int slot = slot(hash);
+        used[slot] = true;
+        keys[slot] = hash;
+        weights[slot] = weight;
+        this.steinerTree[slot] = steinerTree;
+    }
+
+    private int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+}
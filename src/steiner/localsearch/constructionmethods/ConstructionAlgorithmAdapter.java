@@ -4,14 +4,14 @@ import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import steiner.SteinerAlgorithm;
 import steiner.SteinerResult;
+import utils.graphextensions.CompactGraph;
 import utils.graphextensions.GraphUtils;
 
-import java.util.HashMap;
+import java.util.Random;
 import java.util.Set;
 
 public class ConstructionAlgorithmAdapter extends SteinerAlgorithm {
     private final ConstructionMethod method;
-    private final HashMap<DefaultWeightedEdge, Double> weights;
 
     public ConstructionAlgorithmAdapter(
             SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph,
@@ -19,14 +19,18 @@ public class ConstructionAlgorithmAdapter extends SteinerAlgorithm {
             ConstructionMethod method) {
         super(graph, terminals);
         this.method = method;
-        this.weights = new HashMap<>();
-        this.graph.edgeSet().forEach(e -> weights.put(e, graph.getEdgeWeight(e)));
     }
 
     @Override
     public SteinerResult runInstance(SteinerResult result) throws Exception {
         long start = System.nanoTime();
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> smt = this.method.constructSolution(graph, terminals, weights);
+        CompactGraph compact = getCompactGraph();
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> smt = this.method.constructSolution(
+                compact,
+                terminals,
+                compact.copyWeights(),
+                new Random()
+        );
         result.setRuntime(System.nanoTime() - start);
         result.setSmt(smt);
         result.setWeight(GraphUtils.getWeight(smt));
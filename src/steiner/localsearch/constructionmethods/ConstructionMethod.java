@@ -2,13 +2,25 @@ package steiner.localsearch.constructionmethods;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
+import utils.graphextensions.CompactGraph;
 
-import java.util.HashMap;
 import java.util.Set;
+import java.util.random.RandomGenerator;
 
 public interface ConstructionMethod {
+    /**
+     * construct a steiner tree using the given weights instead of the weights of the graph
+     * (the weights are an overlay over the graph, see CompactGraph.withWeights, the graph is never copied)
+     *
+     * @param graph     graph
+     * @param terminals terminals
+     * @param weights   weight of every edge, by edge id of the graph (e.g. perturbed weights)
+     * @param rng       random numbers for the random choices of the method (e.g. the root of SPH)
+     * @return new graph containing the tree, with the weights of the graph
+     */
     SimpleWeightedGraph<Integer, DefaultWeightedEdge> constructSolution(
-            SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph,
+            CompactGraph graph,
             Set<Integer> terminals,
-            HashMap<DefaultWeightedEdge, Double> weights) throws InterruptedException;
+            double[] weights,
+            RandomGenerator rng) throws InterruptedException;
 }
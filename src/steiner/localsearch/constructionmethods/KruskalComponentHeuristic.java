@@ -1,96 +1,170 @@
 package steiner.localsearch.constructionmethods;
 
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import utils.Utils;
+import utils.graphextensions.CompactGraph;
 import utils.graphextensions.GraphUtils;
+import utils.graphextensions.IndexedMinHeap;
+import utils.graphextensions.IntUnionFind;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
-import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
 
 /**
  * construction heuristic that starts from single vertex components (terminals) and combines them until a tree is found
+ * the 2 components that are cheapest to merge are found on the voronoi regions of the components:
+ * * a multi-source dijkstra from every component vertex gives each vertex its nearest component vertex (base)
+ * * an edge (u, v) between regions of different components is a connection of weight d(u) + w(u, v) + d(v),
+ * *        the cheapest connection is the cheapest path between 2 components, the connections are kept in a heap
+ * * merging adds the path base(u) ~> u - v ~> base(v) to the component, its vertices become sources (distance 0),
+ * *        only the labels they improve are relaxed again and only the edges of relabeled vertices are updated
+ * * connections that became internal are dropped when they reach the top of the heap
+ * no all pairs shortest paths and no scan over component pairs, near O(m log n) per merge
  */
 public class KruskalComponentHeuristic implements ConstructionMethod {
 
     @Override
     public SimpleWeightedGraph<Integer, DefaultWeightedEdge> constructSolution(
-            SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph,
+            CompactGraph graph,
             Set<Integer> terminals,
-            HashMap<DefaultWeightedEdge, Double> weights) throws InterruptedException {
+            double[] weights,
+            RandomGenerator rng) throws InterruptedException {
 
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> weightGraph = GraphUtils.replaceWeights(graph, weights);
-        FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> paths = GraphUtils.getShortestPaths(weightGraph);
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+        CompactGraph weightGraph = graph.withWeights(weights);
+        Regions regions = new Regions(weightGraph);
+        int components = 0;
+        for (Integer terminal : terminals) {
+            if (regions.addSource(graph.indexOf(terminal))) components++;
+        }
+        regions.settle();
+
+        while (components > 1 && Utils.notInterrupted()) {
+            // find 2 components that are cheapest to merge, the rest can't be reached if there is none
+            if (!regions.mergeCheapest()) break;
+            components--;
+        }
+        // standard cleanup optimization
+        return GraphUtils.cleanup(weightGraph.getSubsetMST(), graph, regions.getSources(), terminals);
+    }
 
-        HashMap<Integer, Set<Integer>> components = new HashMap<>();
-        terminals.forEach(v -> {
-            solution.addVertex(v);
-            components.put(v, new HashSet<>(Set.of(v)));
-        });
+    /**
+     * voronoi regions of the component vertices and the connections between the components
+     */
+    private static final class Regions {
+        private final CompactGraph graph;
+        // nearest component vertex, distance to it and last edge of the path from it
+        private final double[] dist;
+        private final int[] base;
+        private final int[] pred;
+        private final IndexedMinHeap vertices;
+        // component of every component vertex (by its base)
+        private final IntUnionFind components;
+        // edges between regions of different components, by d(u) + w(u, v) + d(v)
+        private final IndexedMinHeap connections;
+        private final List<Integer> sources = new ArrayList<>();
 
-        while (components.size() > 1) {
-            // find 2 components that are cheapest to merge
-            double minWeight = Double.POSITIVE_INFINITY;
-            GraphPath<Integer, DefaultWeightedEdge> minPath = null;
-            Integer componentJ1 = -1;
-            Integer componentJ2 = -1;
-            for (Map.Entry<Integer, Set<Integer>> entry1 : components.entrySet()) {
-                for (Map.Entry<Integer, Set<Integer>> entry2 : components.entrySet()) {
-                    Utils.notInterrupted();
-                    Integer component1 = entry1.getKey();
-                    Integer component2 = entry2.getKey();
-                    if (component1 < component2) {
-                        // find cheapest way to connect component1 and component2
-                        double localMinWeight = Double.POSITIVE_INFINITY;
-                        GraphPath<Integer, DefaultWeightedEdge> localMinPath = null;
-                        for (Integer vertex1 : entry1.getValue()) {
-                            for (Integer vertex2 : entry2.getValue()) {
-                                GraphPath<Integer, DefaultWeightedEdge> path = paths.getPath(vertex1, vertex2);
-                                double pathWeight = path.getWeight();
-                                if (pathWeight < localMinWeight) {
-                                    localMinWeight = pathWeight;
-                                    localMinPath = path;
-                                }
-                            }
-                        }
-                        if (localMinWeight < minWeight) {
-                            minWeight = localMinWeight;
-                            minPath = localMinPath;
-                            componentJ1 = component1;
-                            componentJ2 = component2;
-                        }
+        private Regions(CompactGraph graph) {
+            this.graph = graph;
+            int n = graph.vertexCount();
+            this.dist = new double[n];
+            this.base = new int[n];
+            this.pred = new int[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            Arrays.fill(base, -1);
+            Arrays.fill(pred, -1);
+            this.vertices = new IndexedMinHeap(n);
+            this.components = new IntUnionFind(n);
+            this.connections = new IndexedMinHeap(graph.edgeCount());
+        }
+
+        /**
+         * @param v vertex index that becomes a component vertex (distance 0)
+         * @return whether v wasn't a component vertex yet
+         */
+        private boolean addSource(int v) {
+            if (base[v] == v) return false;
+            dist[v] = 0d;
+            base[v] = v;
+            pred[v] = -1;
+            vertices.insertOrDecrease(v, 0d);
+            sources.add(graph.vertexId(v));
+            return true;
+        }
+
+        /**
+         * run the dijkstra until every label is the distance to the nearest component vertex
+         */
+        private void settle() {
+            while (!vertices.isEmpty()) {
+                int u = vertices.poll();
+                updateConnections(u);
+                double du = dist[u];
+                for (int slot = graph.slotStart(u); slot < graph.slotEnd(u); slot++) {
+                    int v = graph.slotTarget(slot);
+                    int e = graph.slotEdge(slot);
+                    double dv = du + graph.edgeWeight(e);
+                    if (dv < dist[v]) {
+                        dist[v] = dv;
+                        base[v] = base[u];
+                        pred[v] = e;
+                        vertices.insertOrDecrease(v, dv);
                     }
                 }
             }
-            // add path to solution
-            if (minPath == null) {
-//                System.out.println(components);
-//                System.out.println(componentJ1);
-//                System.out.println(componentJ2);
+        }
+
+        /**
+         * the labels of u changed (they only decrease), so the connections over its edges only get cheaper
+         */
+        private void updateConnections(int u) {
+            int component = components.find(base[u]);
+            for (int slot = graph.slotStart(u); slot < graph.slotEnd(u); slot++) {
+                int v = graph.slotTarget(slot);
+                if (base[v] < 0 || components.find(base[v]) == component) continue;
+                int e = graph.slotEdge(slot);
+                connections.insertOrDecrease(e, dist[u] + graph.edgeWeight(e) + dist[v]);
+            }
+        }
+
+        /**
+         * merge the 2 components with the cheapest connection
+         *
+         * @return whether there was a connection
+         */
+        private boolean mergeCheapest() {
+            while (!connections.isEmpty()) {
+                int e = connections.poll();
+                int u = graph.edgeSource(e);
+                int v = graph.edgeTarget(e);
+                // connection inside a component (since a merge)
+                if (!components.union(base[u], base[v])) continue;
+                int component = base[u];
+                // the path base(u) ~> u - v ~> base(v), walked before its vertices become sources
+                List<Integer> path = new ArrayList<>();
+                for (int x : new int[]{u, v}) {
+                    for (; pred[x] >= 0; x = graph.opposite(pred[x], x)) {
+                        path.add(x);
+                    }
+                }
+                for (int x : path) {
+                    components.union(x, component);
+                    addSource(x);
+                }
+                settle();
+                return true;
             }
-            assert minPath != null;
-            minPath.getVertexList().stream().filter(Predicate.not(solution::containsVertex)).forEach(solution::addVertex);
-            minPath.getEdgeList().stream().filter(Predicate.not(solution::containsEdge)).forEach(
-                    e -> solution.addEdge(weightGraph.getEdgeSource(e), weightGraph.getEdgeTarget(e), e));
-            // merge components
-            Set<Integer> component1Set = components.get(componentJ1);
-            component1Set.addAll(components.get(componentJ2));
-            component1Set.addAll(minPath.getVertexList());
-            components.remove(componentJ2);
+            return false;
+        }
+
+        /**
+         * @return vertices (not indices) of the components
+         */
+        private List<Integer> getSources() {
+            return sources;
         }
-        // standard cleanup optimization
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> finalSolution = GraphUtils.subgraph(
-                weightGraph,
-                solution.vertexSet()
-        );
-        finalSolution = GraphUtils.getGraphFromSpanningTree(GraphUtils.getMST(finalSolution), weightGraph);
-        GraphUtils.removeSteinerLeaves(finalSolution, terminals);
-        return finalSolution;
     }
-}
\ No newline at end of file
+}
@@ -3,33 +3,60 @@ package steiner.localsearch.constructionmethods;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import utils.Utils;
-import utils.graphextensions.GraphUtils;
+import utils.graphextensions.CompactGraph;
+import utils.graphextensions.SubsetMST;
 
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.Set;
+import java.util.random.RandomGenerator;
 
 /**
  * construction heuristic that continuously prunes steiner leaves
+ * the vertices are a mask over the graph and every MST comes from the same presorted edge list (see SubsetMST)
  */
 public class MSTHeuristic implements ConstructionMethod {
 
     @Override
     public SimpleWeightedGraph<Integer, DefaultWeightedEdge> constructSolution(
-            SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph,
+            CompactGraph compact,
             Set<Integer> terminals,
-            HashMap<DefaultWeightedEdge, Double> weights) throws InterruptedException {
+            double[] weights,
+            RandomGenerator rng) throws InterruptedException {
 
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> weightGraph = GraphUtils.replaceWeights(graph, weights);
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution = weightGraph;
+        int n = compact.vertexCount();
+        SubsetMST kernel = new SubsetMST(compact, weights);
+        boolean[] isTerminal = new boolean[n];
+        terminals.forEach(t -> isTerminal[compact.indexOf(t)] = true);
 
+        BitSet solution = new BitSet(n);
+        solution.set(0, n);
+        int[] edges = new int[Math.max(0, n - 1)];
+        int[] degree = new int[n];
+        int count = 0;
         boolean next = true;
         while (next && Utils.notInterrupted()) {
-            solution = GraphUtils.subgraph(weightGraph, solution.vertexSet());
-            solution = GraphUtils.getGraphFromSpanningTree(GraphUtils.getMST(solution), weightGraph);
-            int size = solution.vertexSet().size();
-            GraphUtils.removeSteinerLeaves(solution, terminals);
-            next = size - solution.vertexSet().size() > 0;
+            count = kernel.compute(solution, edges);
+            // the solution is the MST (without isolated vertices)
+            solution.clear();
+            for (int i = 0; i < count; i++) {
+                int src = compact.edgeSource(edges[i]);
+                int trg = compact.edgeTarget(edges[i]);
+                if (!solution.get(src)) degree[src] = 0;
+                if (!solution.get(trg)) degree[trg] = 0;
+                solution.set(src);
+                solution.set(trg);
+                degree[src]++;
+                degree[trg]++;
+            }
+            // remove steiner leaves
+            next = false;
+            for (int v = solution.nextSetBit(0); v >= 0; v = solution.nextSetBit(v + 1)) {
+                if (!isTerminal[v] && degree[v] < 2) {
+                    solution.clear(v);
+                    next = true;
+                }
+            }
         }
-        return solution;
+        return compact.getGraphFromEdges(edges, count);
     }
 }
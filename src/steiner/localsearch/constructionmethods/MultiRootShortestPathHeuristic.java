@@ -0,0 +1,275 @@
+package steiner.localsearch.constructionmethods;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import utils.Utils;
+import utils.graphextensions.CompactGraph;
+import utils.graphextensions.MultiSourceDijkstra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+
+/**
+ * shortest path heuristic (takahashi-matsuyama) from several roots, the cheapest tree is kept
+ * * the shortest path trees of the terminals are computed once (in parallel) and shared by every run (read-only),
+ * *        a run only keeps the distance from every terminal to its tree, updated for every vertex it adds (O(k))
+ * * the runs are spread over a ForkJoinPool, every thread reuses its own buffers
+ * * a run is pruned as soon as its partial tree costs more than the best tree so far (the cost only grows)
+ * * equal costs are decided by the order of the roots, so the tree doesn't depend on the scheduling
+ * !the shortest path trees take k * n memory, like the terminal rows of DistanceOracle
+ */
+public class MultiRootShortestPathHeuristic implements ConstructionMethod {
+
+    // number of roots (0: every terminal) and threads (1: sequential)
+    private final int roots;
+    private final int threads;
+
+    /**
+     * roots and threads of the configuration (Utils.sphRoots, Utils.threads)
+     */
+    public MultiRootShortestPathHeuristic() {
+        this(Utils.sphRoots, Utils.threads);
+    }
+
+    /**
+     * @param roots   number of random terminals to start from, 0 (or more than there are terminals): every terminal
+     * @param threads number of threads (1: sequential)
+     */
+    public MultiRootShortestPathHeuristic(int roots, int threads) {
+        this.roots = roots;
+        this.threads = threads;
+    }
+
+    @Override
+    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> constructSolution(
+            CompactGraph graph,
+            Set<Integer> terminals,
+            double[] weights,
+            RandomGenerator rng) throws InterruptedException {
+
+        CompactGraph weightGraph = graph.withWeights(weights);
+        int[] terminalIndices = terminals.stream().mapToInt(graph::indexOf).sorted().toArray();
+        int[] terminalPosition = new int[graph.vertexCount()];
+        Arrays.fill(terminalPosition, -1);
+        for (int i = 0; i < terminalIndices.length; i++) {
+            terminalPosition[terminalIndices[i]] = i;
+        }
+        int[] rootPositions = chooseRoots(terminalIndices.length, rng);
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            // shortest path trees of the terminals
+            ThreadLocal<MultiSourceDijkstra> dijkstra = ThreadLocal.withInitial(() -> new MultiSourceDijkstra(weightGraph));
+            List<Callable<ShortestPathTree>> treeTasks = new ArrayList<>();
+            for (int t : terminalIndices) {
+                treeTasks.add(() -> ShortestPathTree.of(dijkstra.get(), t));
+            }
+            ShortestPathTree[] trees = Utils.invokeAll(pool, treeTasks).toArray(new ShortestPathTree[0]);
+
+            // one run per root
+            Incumbent incumbent = new Incumbent();
+            ThreadLocal<Run> run = ThreadLocal.withInitial(
+                    () -> new Run(weightGraph, trees, terminalIndices, terminalPosition));
+            List<Callable<Void>> runTasks = new ArrayList<>();
+            for (int order = 0; order < rootPositions.length; order++) {
+                int runOrder = order;
+                runTasks.add(() -> {
+                    run.get().grow(runOrder, rootPositions[runOrder], incumbent);
+                    return null;
+                });
+            }
+            Utils.invokeAll(pool, runTasks);
+
+            SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution = graph.getGraphFromEdges(
+                    incumbent.edges,
+                    incumbent.count
+            );
+            // a single terminal has no edges
+            solution.addVertex(graph.vertexId(incumbent.root));
+            return solution;
+        } catch (InterruptedException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @param terminalCount number of terminals
+     * @param rng           random numbers of the caller, so the roots are reproducible with a seeded generator
+     * @return positions (in the terminal order) of the roots, sorted
+     */
+    private int[] chooseRoots(int terminalCount, RandomGenerator rng) {
+        if (roots <= 0 || roots >= terminalCount) return IntStream.range(0, terminalCount).toArray();
+        // the first positions of a partial fisher-yates shuffle
+        int[] positions = IntStream.range(0, terminalCount).toArray();
+        for (int i = 0; i < roots; i++) {
+            int j = rng.nextInt(i, terminalCount);
+            int position = positions[j];
+            positions[j] = positions[i];
+            positions[i] = position;
+        }
+        int[] chosen = Arrays.copyOf(positions, roots);
+        Arrays.sort(chosen);
+        return chosen;
+    }
+
+    /**
+     * shortest path tree of a terminal: distance to every vertex and the last edge of the path to it
+     */
+    private record ShortestPathTree(double[] dist, int[] pred) {
+
+        private static ShortestPathTree of(MultiSourceDijkstra dijkstra, int terminal) throws InterruptedException {
+            Utils.notInterrupted();
+            dijkstra.run(new int[]{terminal});
+            int n = dijkstra.getGraph().vertexCount();
+            double[] dist = new double[n];
+            int[] pred = new int[n];
+            for (int v = 0; v < n; v++) {
+                dist[v] = dijkstra.distance(v);
+                pred[v] = dijkstra.pred(v);
+            }
+            return new ShortestPathTree(dist, pred);
+        }
+    }
+
+    /**
+     * cheapest tree so far (cost with the weights of the construction), shared by the runs
+     */
+    private static final class Incumbent {
+        private volatile double cost = Double.POSITIVE_INFINITY;
+        private int order = Integer.MAX_VALUE;
+        private int root = -1;
+        private int[] edges = new int[0];
+        private int count;
+
+        private double bound() {
+            return cost;
+        }
+
+        private synchronized void offer(double cost, int order, int root, int[] edges, int count) {
+            if (cost < this.cost || (cost == this.cost && order < this.order)) {
+                this.order = order;
+                this.root = root;
+                this.edges = Arrays.copyOf(edges, count);
+                this.count = count;
+                this.cost = cost;
+            }
+        }
+    }
+
+    /**
+     * buffers of one run, reused by every run of a thread
+     */
+    private static final class Run {
+        private final CompactGraph graph;
+        private final ShortestPathTree[] trees;
+        private final int[] terminals;
+        private final int[] terminalPosition;
+
+        // vertices of the tree
+        private final boolean[] inTree;
+        private final int[] treeVertices;
+        private int treeSize;
+        // edges of the tree and of the path that is added
+        private final int[] edges;
+        private int count;
+        private final int[] path;
+        // per terminal (position): added to the tree, distance to the tree and the tree vertex it is closest to
+        private final boolean[] done;
+        private final double[] attach;
+        private final int[] attachAt;
+        private int terminalsToAdd;
+
+        private Run(CompactGraph graph, ShortestPathTree[] trees, int[] terminals, int[] terminalPosition) {
+            this.graph = graph;
+            this.trees = trees;
+            this.terminals = terminals;
+            this.terminalPosition = terminalPosition;
+            int n = graph.vertexCount();
+            this.inTree = new boolean[n];
+            this.treeVertices = new int[n];
+            this.edges = new int[n];
+            this.path = new int[n];
+            this.done = new boolean[terminals.length];
+            this.attach = new double[terminals.length];
+            this.attachAt = new int[terminals.length];
+        }
+
+        /**
+         * grow a tree from the root, offer it to the incumbent unless it gets more expensive than the incumbent
+         *
+         * @param order        order of the root (for ties)
+         * @param rootPosition position of the root in the terminals
+         * @param incumbent    cheapest tree so far
+         */
+        private void grow(int order, int rootPosition, Incumbent incumbent) throws InterruptedException {
+            for (int i = 0; i < treeSize; i++) {
+                inTree[treeVertices[i]] = false;
+            }
+            treeSize = 0;
+            count = 0;
+            Arrays.fill(done, false);
+            Arrays.fill(attach, Double.POSITIVE_INFINITY);
+            terminalsToAdd = terminals.length;
+            addVertex(terminals[rootPosition]);
+
+            double cost = 0d;
+            while (terminalsToAdd > 0 && Utils.notInterrupted()) {
+                int next = -1;
+                for (int j = 0; j < terminals.length; j++) {
+                    if (!done[j] && (next < 0 || attach[j] < attach[next])) next = j;
+                }
+                // the rest of the terminals can't be reached
+                if (attach[next] == Double.POSITIVE_INFINITY) break;
+
+                // path from the tree to the terminal (only the part after the last tree vertex on it)
+                int[] pred = trees[next].pred();
+                int from = attachAt[next];
+                int pathLength = 0;
+                for (int v = from; v != terminals[next]; ) {
+                    int e = pred[v];
+                    v = graph.opposite(e, v);
+                    path[pathLength++] = e;
+                    if (inTree[v]) {
+                        from = v;
+                        pathLength = 0;
+                    }
+                }
+                for (int i = 0, v = from; i < pathLength; i++) {
+                    int e = path[i];
+                    edges[count++] = e;
+                    cost += graph.edgeWeight(e);
+                    v = graph.opposite(e, v);
+                    addVertex(v);
+                }
+                if (cost > incumbent.bound()) return;
+            }
+            incumbent.offer(cost, order, terminals[rootPosition], edges, count);
+        }
+
+        private void addVertex(int v) {
+            inTree[v] = true;
+            treeVertices[treeSize++] = v;
+            int position = terminalPosition[v];
+            if (position >= 0 && !done[position]) {
+                done[position] = true;
+                terminalsToAdd--;
+            }
+            for (int j = 0; j < terminals.length; j++) {
+                if (!done[j] && trees[j].dist()[v] < attach[j]) {
+                    attach[j] = trees[j].dist()[v];
+                    attachAt[j] = v;
+                }
+            }
+        }
+    }
+}
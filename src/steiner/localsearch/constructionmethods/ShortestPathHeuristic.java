@@ -1,66 +1,73 @@
 package steiner.localsearch.constructionmethods;
 
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import utils.Utils;
-import utils.graphextensions.GraphUtils;
+import utils.graphextensions.CompactGraph;
+import utils.graphextensions.IncrementalDijkstra;
 
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Set;
-import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
 
 /**
  * construction heuristic that continuously adds the cheapest path from a terminal to a vertex in the solution
+ * (takahashi-matsuyama), the paths come from one dijkstra that grows with the solution (see IncrementalDijkstra):
+ * * the first terminal the search settles is the one closest to the solution, its path is added
+ * * the vertices of the path become sources (distance 0), the search continues from the labels it has
+ * no all pairs shortest paths and no scan over terminals x solution vertices, O(k m log n) per construction
  */
 public class ShortestPathHeuristic implements ConstructionMethod {
 
     @Override
     public SimpleWeightedGraph<Integer, DefaultWeightedEdge> constructSolution(
-            SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph,
+            CompactGraph graph,
             Set<Integer> terminals,
-            HashMap<DefaultWeightedEdge, Double> weights) throws InterruptedException {
+            double[] weights,
+            RandomGenerator rng) throws InterruptedException {
 
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> weightGraph = GraphUtils.replaceWeights(graph, weights);
-        FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> paths = GraphUtils.getShortestPaths(weightGraph);
-        Integer root = Utils.getRandomSetElement(terminals);
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
-        HashSet<Integer> terminalsToAdd = new HashSet<>(terminals);
-        terminalsToAdd.remove(root);
-        solution.addVertex(root);
+        IncrementalDijkstra dijkstra = new IncrementalDijkstra(graph.withWeights(weights));
+        boolean[] isTerminal = new boolean[graph.vertexCount()];
+        terminals.forEach(t -> isTerminal[graph.indexOf(t)] = true);
+        int root = graph.indexOf(Utils.getRandomSetElement(terminals, rng));
+        int[] edges = new int[Math.max(1, graph.vertexCount())];
+        int count = grow(dijkstra, isTerminal, terminals.size(), root, edges);
 
-        while (!terminalsToAdd.isEmpty() && Utils.notInterrupted()) {
-            double minWeight = Double.POSITIVE_INFINITY;
-            int source = -1;
-            int sink = -1;
-            for (Integer terminal : terminalsToAdd) {
-                for (Integer solVertex : solution.vertexSet()) {
-                    double pathWeight = paths.getPathWeight(terminal, solVertex);
-                    if (pathWeight < minWeight) {
-                        minWeight = pathWeight;
-                        source = terminal;
-                        sink = solVertex;
-                    }
-                }
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> solution = graph.getGraphFromEdges(edges, count);
+        // a single terminal has no edges
+        solution.addVertex(graph.vertexId(root));
+        return solution;
+    }
+
+    /**
+     * grow the solution from the root until it contains every terminal
+     *
+     * @param dijkstra      search on the (perturbed) graph, without sources
+     * @param isTerminal    terminals, by vertex index
+     * @param terminalCount number of terminals
+     * @param root          vertex index of the root (a terminal)
+     * @param edges         buffer for the edge ids of the solution (at least as long as the number of vertices)
+     * @return number of edges written to the buffer
+     */
+    static int grow(IncrementalDijkstra dijkstra, boolean[] isTerminal, int terminalCount, int root, int[] edges)
+            throws InterruptedException {
+        CompactGraph graph = dijkstra.getGraph();
+        dijkstra.addSource(root);
+        int terminalsToAdd = terminalCount - 1;
+        int count = 0;
+        while (terminalsToAdd > 0 && Utils.notInterrupted()) {
+            int terminal = dijkstra.nextTarget(isTerminal);
+            // the rest of the terminals can't be reached
+            if (terminal < 0) break;
+            // walk the path back to the solution, its vertices become sources
+            int v = terminal;
+            while (!dijkstra.isSource(v)) {
+                int e = dijkstra.pred(v);
+                edges[count++] = e;
+                dijkstra.addSource(v);
+                if (isTerminal[v]) terminalsToAdd--;
+                v = graph.opposite(e, v);
             }
-            GraphPath<Integer, DefaultWeightedEdge> path = paths.getPath(source, sink);
-            path.getVertexList().stream().filter(Predicate.not(solution::containsVertex)).forEach(v -> {
-                solution.addVertex(v);
-                terminalsToAdd.remove(v);
-            });
-            path.getEdgeList().stream().filter(Predicate.not(solution::containsEdge)).forEach(
-                    e -> solution.addEdge(weightGraph.getEdgeSource(e), weightGraph.getEdgeTarget(e), e));
         }
-
-        // standard cleanup optimization
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> finalSolution = GraphUtils.subgraph(
-                weightGraph,
-                solution.vertexSet()
-        );
-        finalSolution = GraphUtils.getGraphFromSpanningTree(GraphUtils.getMST(finalSolution), weightGraph);
-        GraphUtils.removeSteinerLeaves(finalSolution, terminals);
-        return solution;
+        return count;
     }
 }
@@ -4,10 +4,12 @@ import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import steiner.SteinerResult;
 import steiner.approx.TwoApproximation;
+import steiner.approx.TwoApproximation.Variant;
+import utils.graphextensions.CompactGraph;
 import utils.graphextensions.GraphUtils;
 
-import java.util.HashMap;
 import java.util.Set;
+import java.util.random.RandomGenerator;
 
 /**
  * Created by Stefan Croes
@@ -15,16 +17,21 @@ import java.util.Set;
 
 /**
  * construction heuristic that using the 2approximation algorithm
+ * (mehlhorn variant, it only needs the compact graph, so it runs on the weight overlay)
  */
 public class TwoApproxHeuristic implements ConstructionMethod {
     @Override
     public SimpleWeightedGraph<Integer, DefaultWeightedEdge> constructSolution(
-            SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph,
+            CompactGraph graph,
             Set<Integer> terminals,
-            HashMap<DefaultWeightedEdge, Double> weights) throws InterruptedException {
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> weightGraph = GraphUtils.replaceWeights(graph, weights);
-        TwoApproximation twoApproximation = new TwoApproximation(weightGraph, terminals);
+            double[] weights,
+            RandomGenerator rng) throws InterruptedException {
+        TwoApproximation twoApproximation = new TwoApproximation(graph.asGraph(), terminals, Variant.MEHLHORN);
+        twoApproximation.withCompactGraph(graph.withWeights(weights));
         SteinerResult result = twoApproximation.runInstance(new SteinerResult(null, -1));
-        return result.getSmt();
+        // the tree is a new graph with the weights of the overlay
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> smt = result.getSmt();
+        GraphUtils.replaceWeightsInPlace(smt, graph.asGraph());
+        return smt;
     }
 }
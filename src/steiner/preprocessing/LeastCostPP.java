@@ -1,33 +1,86 @@
 package steiner.preprocessing;
 
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
+import utils.Utils;
+import utils.graphextensions.BoundedDijkstra;
+import utils.graphextensions.CompactGraph;
 import utils.graphextensions.GraphUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by Stefan Croes
  */
+
+/**
+ * least cost test: an edge (u, v) is removed if there is a path from u to v that is cheaper than the edge
+ * * every edge is tested with a dijkstra from u that stops at c(u, v) or as soon as v is reached (see BoundedDijkstra),
+ * *        so no all pairs shortest paths (or paths) are computed and the memory is O(n) per thread
+ * * the edges are tested in chunks on a ForkJoinPool, every thread reuses its own dijkstra workspace
+ */
 public class LeastCostPP extends PPMethod {
 
+    // number of threads the edges are tested with (1: sequential)
+    private final int threads;
+
     public LeastCostPP(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
+        this(graph, terminals, Utils.threads);
+    }
+
+    /**
+     * @param threads number of threads to test the edges with (1: sequential)
+     */
+    public LeastCostPP(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals, int threads) {
         super(graph, terminals);
+        this.threads = threads;
     }
 
     @Override
-    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> preprocessing() {
+    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> preprocessing() throws InterruptedException {
+        CompactGraph compact = CompactGraph.of(graph);
+        int m = compact.edgeCount();
+        boolean[] redundant = new boolean[m];
+        ThreadLocal<BoundedDijkstra> dijkstra = ThreadLocal.withInitial(() -> new BoundedDijkstra(compact));
+        int chunk = Math.max(1, m / (8 * Math.max(1, threads)));
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < m; from += chunk) {
+            int start = from;
+            int end = Math.min(m, from + chunk);
+            tasks.add(() -> {
+                Utils.notInterrupted();
+                BoundedDijkstra search = dijkstra.get();
+                for (int e = start; e < end; e++) {
+                    redundant[e] = search.hasPathShorterThan(
+                            compact.edgeSource(e),
+                            compact.edgeTarget(e),
+                            compact.edgeWeight(e)
+                    );
+                }
+                return null;
+            });
+        }
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            Utils.invokeAll(pool, tasks);
+        } catch (InterruptedException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+
         SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph1 = GraphUtils.copyGraph(graph);
-        FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> paths = GraphUtils.getShortestPaths(graph1);
-        Set<DefaultWeightedEdge> redundant = graph1
-                .edgeSet()
-                .stream()
-                .filter(e -> paths.getPath(graph1.getEdgeSource(e), graph1.getEdgeTarget(e)).getWeight()
-                        < graph1.getEdgeWeight(e))
-                .collect(Collectors.toSet());
-        graph1.removeAllEdges(redundant);
+        for (int e = 0; e < m; e++) {
+            if (redundant[e]) {
+                graph1.removeEdge(compact.vertexId(compact.edgeSource(e)), compact.vertexId(compact.edgeTarget(e)));
+            }
+        }
         return graph1;
     }
 
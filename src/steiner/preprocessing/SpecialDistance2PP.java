@@ -7,6 +7,7 @@ import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import utils.graphextensions.ClosureWeightedEdge;
+import utils.graphextensions.DistanceOracle;
 import utils.graphextensions.GraphUtils;
 
 import java.util.*;
@@ -16,15 +17,15 @@ import java.util.*;
  * this version uses the largest single edge in the path in closureMST
  */
 public class SpecialDistance2PP extends PPMethod {
-    private final FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> paths;
+    private final DistanceOracle paths;
 
     public SpecialDistance2PP(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals) {
         super(graph, terminals);
-        this.paths = new FloydWarshallShortestPaths<>(graph);
+        this.paths = GraphUtils.getShortestPaths(graph, terminals);
     }
 
     public SpecialDistance2PP(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> terminals,
-                              FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> paths) {
+                              DistanceOracle paths) {
         super(graph, terminals);
         this.paths = paths;
     }
@@ -88,14 +89,9 @@ public class SpecialDistance2PP extends PPMethod {
         for (Integer i : vertices) {
             List<Pair<Integer, Double>> paths3 = terminals
                     .stream()
-                    .map(t -> paths.getPath(i, t))
-                    .sorted(Comparator.comparing(GraphPath::getWeight))
+                    .map(t -> new Pair<>(t, paths.getPathWeight(t, i)))
+                    .sorted(Comparator.comparing(Pair::getSecond))
                     .limit(3)
-                    .map(path -> new Pair<>(
-                                    path.getStartVertex().equals(i) ? path.getEndVertex() : path.getStartVertex(),
-                                    path.getWeight()
-                            )
-                    )
                     .toList();
             d3Map.put(i, paths3);
         }
@@ -10,6 +10,7 @@ import steiner.SteinerEnum;
 import steiner.SteinerResult;
 import utils.dot.DotFileUtils;
 import utils.graphextensions.GraphUtils;
+import utils.stp.STPBinaryCache;
 import utils.stp.STPFileNameFilter;
 import utils.stp.STPFileParser;
 import utils.stp.STPGraph;
@@ -60,14 +61,15 @@ public class RunUtils {
         }
 
         for (File file : files) {
-            // parse the .stp file
-            STPFileParser parser = new STPFileParser(file.getPath());
-            STPGraph stpGraph = parser.readFromSTPFile();
+            // parse the .stp file (or load its binary cache)
+            STPGraph stpGraph = Utils.useBinaryCache
+                    ? STPBinaryCache.load(file)
+                    : new STPFileParser(file.getPath()).readFromSTPFile();
 
             SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph = stpGraph.getGraph();
             Set<Integer> terminals = stpGraph.getTerminals();
 
-            SteinerAlgorithm alg = algorithm.getInstance(graph, terminals);
+            SteinerAlgorithm alg = algorithm.getInstance(stpGraph.getCompactGraph(), terminals);
 
             String fileName = file.getName();
             System.out.println("start " + algorithm.name() + " on " + fileName);
@@ -1,15 +1,36 @@
 package utils;
 
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Random;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 
 public class Utils {
     /* timeout */
     public static long timeout = 300;
     public static TimeUnit timeoutUnit = TimeUnit.SECONDS;
 
+    /* load .stp files through their binary cache (see STPBinaryCache) */
+    public static boolean useBinaryCache = true;
+
+    /* number of threads for the parallel algorithm variants */
+    public static int threads = Runtime.getRuntime().availableProcessors();
+
+    /* number of entries of the transposition table of every local search thread (see TranspositionTable) */
+    public static int transpositionTableSize = 1 << 16;
+
+    /* number of roots of the multi-root shortest path heuristic (0: every terminal) */
+    public static int sphRoots = 0;
+
+    /* key path exchange of FastLocalSearch on a repaired voronoi diagram instead of KeyPathExchange */
+    public static boolean voronoiKeyPathExchange = false;
+
     private Utils() {
     }
 
@@ -17,11 +38,44 @@ public class Utils {
      * get random element from a set
      *
      * @param set set to get a random element from
+     * @param rng random numbers to choose with (e.g. the stream of a GRASP iteration)
      * @param <E> Class of set elements
-     * @return the randomly chosen element
+     * @return the randomly chosen element, null if the set is empty
+     */
+    public static <E> E getRandomSetElement(Set<E> set, RandomGenerator rng) {
+        if (set.isEmpty()) return null;
+        return set.stream().skip(rng.nextInt(set.size())).findFirst().orElse(null);
+    }
+
+    /**
+     * run the tasks on the pool, or one after another on the current thread if there is no pool
+     *
+     * @param pool  pool to run the tasks on, null for a sequential run
+     * @param tasks tasks to run
+     * @param <T>   result type of the tasks
+     * @return results of the tasks, in the order of the tasks (independent of the scheduling)
+     * @throws Exception exception of the first failed task (in the order of the tasks)
      */
-    public static <E> E getRandomSetElement(Set<E> set) {
-        return set.stream().skip(new Random().nextInt(set.size())).findFirst().orElse(null);
+    public static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (pool == null) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+        List<ForkJoinTask<T>> submitted = new ArrayList<>(tasks.size());
+        tasks.forEach(task -> submitted.add(pool.submit(task)));
+        try {
+            for (ForkJoinTask<T> task : submitted) {
+                results.add(task.get());
+            }
+        } catch (ExecutionException e) {
+            submitted.forEach(task -> task.cancel(true));
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
     }
 
     /**
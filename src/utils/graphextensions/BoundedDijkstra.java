@@ -0,0 +1,69 @@
+package utils.graphextensions;
+
+import java.util.Arrays;
+
+/**
+ * dijkstra on a CompactGraph that stops at a distance bound, for tests like "is there a path from u to v shorter than c"
+ * * labels at or above the bound are never set, so a search only visits the ball of radius bound around the source
+ * * the search stops as soon as the target gets a label below the bound (a label is the length of a real path)
+ * * only the touched vertices are reset after a search, so a search costs O(visited), not O(n)
+ * !the arrays and the heap are reused by every search, so an instance must not be shared between threads
+ */
+public class BoundedDijkstra {
+
+    private final CompactGraph graph;
+    private final double[] dist;
+    private final int[] touched;
+    private int touchedCount;
+    private final IndexedMinHeap heap;
+
+    public BoundedDijkstra(CompactGraph graph) {
+        this.graph = graph;
+        int n = graph.vertexCount();
+        this.dist = new double[n];
+        this.touched = new int[n];
+        this.heap = new IndexedMinHeap(n);
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param source vertex index
+     * @param target vertex index, not the source
+     * @param bound  length the path has to beat
+     * @return whether there is a path from source to target that is shorter than bound
+     */
+    public boolean hasPathShorterThan(int source, int target, double bound) {
+        boolean found = false;
+        label(source, 0d);
+        while (!heap.isEmpty() && !found) {
+            int u = heap.poll();
+            double du = dist[u];
+            for (int slot = graph.slotStart(u); slot < graph.slotEnd(u); slot++) {
+                int v = graph.slotTarget(slot);
+                double dv = du + graph.edgeWeight(graph.slotEdge(slot));
+                if (dv >= bound || dv >= dist[v]) continue;
+                if (v == target) {
+                    found = true;
+                    break;
+                }
+                label(v, dv);
+            }
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            dist[touched[i]] = Double.POSITIVE_INFINITY;
+        }
+        touchedCount = 0;
+        heap.clear();
+        return found;
+    }
+
+    private void label(int v, double d) {
+        if (dist[v] == Double.POSITIVE_INFINITY) touched[touchedCount++] = v;
+        dist[v] = d;
+        heap.insertOrDecrease(v, d);
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+}
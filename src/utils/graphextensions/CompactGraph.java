@@ -0,0 +1,435 @@
+package utils.graphextensions;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * immutable compressed sparse row representation of an undirected weighted graph
+ * * vertices are the indices 0..n-1 (vertexId(v) gives the vertex of the original graph)
+ * * edges are the indices 0..m-1 with their endpoints and weight in primitive arrays
+ * * the adjacency of vertex v is stored in the slots offsets[v]..offsets[v+1]-1,
+ * *        each slot holds the neighbour and the id of the edge leading to it
+ * hot paths can walk this without boxing, hashing or pointer chasing,
+ * asGraph and getGraphFromEdges adapt back to JGraphT (e.g. for SteinerResult),
+ * getSubsetMST gives the MST of induced subgraphs without copying (see SubsetMST),
+ * withWeights gives the same graph with other edge weights without copying (e.g. perturbed weights),
+ * write and read (de)serialize the arrays as they are (see STPBinaryCache)
+ */
+public final class CompactGraph {
+
+    // vertex index <-> vertex of the JGraphT graph
+    private final int[] vertexIds;
+    private final int[] indexOf;
+
+    // edge id -> endpoints (vertex indices) and weight
+    private final int[] edgeSource;
+    private final int[] edgeTarget;
+    private final double[] edgeWeight;
+
+    // adjacency
+    private final int[] offsets;
+    private final int[] adjTarget;
+    private final int[] adjEdge;
+
+    // JGraphT view of the graph and its edge objects (by edge id), built on first use if not given
+    private SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph;
+    private DefaultWeightedEdge[] edgeObjects;
+    // kruskal kernel for induced subgraphs, built on first use
+    private SubsetMST subsetMST;
+
+    private CompactGraph(int[] vertexIds, int[] edgeSource, int[] edgeTarget, double[] edgeWeight) {
+        int n = vertexIds.length;
+        int m = edgeSource.length;
+        this.vertexIds = vertexIds;
+        this.edgeSource = edgeSource;
+        this.edgeTarget = edgeTarget;
+        this.edgeWeight = edgeWeight;
+
+        this.indexOf = buildIndex(vertexIds);
+
+        // count degrees, then fill the slots of each vertex
+        this.offsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            offsets[edgeSource[e] + 1]++;
+            offsets[edgeTarget[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        this.adjTarget = new int[2 * m];
+        this.adjEdge = new int[2 * m];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int e = 0; e < m; e++) {
+            int u = edgeSource[e];
+            int v = edgeTarget[e];
+            adjTarget[next[u]] = v;
+            adjEdge[next[u]++] = e;
+            adjTarget[next[v]] = u;
+            adjEdge[next[v]++] = e;
+        }
+    }
+
+    private CompactGraph(int[] vertexIds, int[] edgeSource, int[] edgeTarget, double[] edgeWeight,
+                         int[] offsets, int[] adjTarget, int[] adjEdge) {
+        this.vertexIds = vertexIds;
+        this.indexOf = buildIndex(vertexIds);
+        this.edgeSource = edgeSource;
+        this.edgeTarget = edgeTarget;
+        this.edgeWeight = edgeWeight;
+        this.offsets = offsets;
+        this.adjTarget = adjTarget;
+        this.adjEdge = adjEdge;
+    }
+
+    private CompactGraph(CompactGraph base, double[] edgeWeight) {
+        this.vertexIds = base.vertexIds;
+        this.indexOf = base.indexOf;
+        this.edgeSource = base.edgeSource;
+        this.edgeTarget = base.edgeTarget;
+        this.edgeWeight = edgeWeight;
+        this.offsets = base.offsets;
+        this.adjTarget = base.adjTarget;
+        this.adjEdge = base.adjEdge;
+        this.graph = base.asGraph();
+        this.edgeObjects = base.edgeObjects;
+    }
+
+    private static int[] buildIndex(int[] vertexIds) {
+        int maxId = -1;
+        for (int id : vertexIds) {
+            if (id < 0) throw new IllegalArgumentException("vertices must be non-negative: " + id);
+            maxId = Math.max(maxId, id);
+        }
+        int[] index = new int[maxId + 1];
+        Arrays.fill(index, -1);
+        for (int v = 0; v < vertexIds.length; v++) {
+            index[vertexIds[v]] = v;
+        }
+        return index;
+    }
+
+    /**
+     * build compact graph from a JGraphT graph, edge ids follow the iteration order of the edge set
+     * the JGraphT graph is kept as view (asGraph), so it should not be modified afterwards
+     *
+     * @param graph graph to convert
+     * @return compact graph
+     */
+    public static CompactGraph of(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph) {
+        int[] vertexIds = graph.vertexSet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        int maxId = vertexIds.length == 0 ? -1 : vertexIds[vertexIds.length - 1];
+        int[] index = new int[maxId + 1];
+        for (int v = 0; v < vertexIds.length; v++) {
+            index[vertexIds[v]] = v;
+        }
+        int m = graph.edgeSet().size();
+        int[] sources = new int[m];
+        int[] targets = new int[m];
+        double[] weights = new double[m];
+        DefaultWeightedEdge[] edges = new DefaultWeightedEdge[m];
+        int e = 0;
+        for (DefaultWeightedEdge edge : graph.edgeSet()) {
+            sources[e] = index[graph.getEdgeSource(edge)];
+            targets[e] = index[graph.getEdgeTarget(edge)];
+            weights[e] = graph.getEdgeWeight(edge);
+            edges[e++] = edge;
+        }
+        CompactGraph compactGraph = new CompactGraph(vertexIds, sources, targets, weights);
+        compactGraph.graph = graph;
+        compactGraph.edgeObjects = edges;
+        return compactGraph;
+    }
+
+    /**
+     * build compact graph from primitive arrays (e.g. straight from a parser)
+     *
+     * @param vertexIds vertices of the graph
+     * @param sources   first endpoint (vertex, not index) of each edge
+     * @param targets   second endpoint (vertex, not index) of each edge
+     * @param weights   weight of each edge
+     * @return compact graph
+     */
+    public static CompactGraph of(int[] vertexIds, int[] sources, int[] targets, double[] weights) {
+        if (sources.length != targets.length || sources.length != weights.length) {
+            throw new IllegalArgumentException("edge arrays must have the same length");
+        }
+        int[] sortedIds = vertexIds.clone();
+        Arrays.sort(sortedIds);
+        int maxId = sortedIds.length == 0 ? -1 : sortedIds[sortedIds.length - 1];
+        int[] index = new int[maxId + 1];
+        Arrays.fill(index, -1);
+        for (int v = 0; v < sortedIds.length; v++) {
+            index[sortedIds[v]] = v;
+        }
+        int[] edgeSource = new int[sources.length];
+        int[] edgeTarget = new int[targets.length];
+        for (int e = 0; e < sources.length; e++) {
+            if (sources[e] > maxId || targets[e] > maxId || index[sources[e]] < 0 || index[targets[e]] < 0) {
+                throw new IllegalArgumentException("edge " + sources[e] + "-" + targets[e] + " has an unknown endpoint");
+            }
+            edgeSource[e] = index[sources[e]];
+            edgeTarget[e] = index[targets[e]];
+        }
+        return new CompactGraph(sortedIds, edgeSource, edgeTarget, weights.clone());
+    }
+
+    /**
+     * weight overlay: the vertices, edge ids and adjacency of this graph with other edge weights, nothing is copied
+     * !the JGraphT view (asGraph, edgeObject) is the view of this graph, so it has the weights of this graph,
+     * everything else (edgeWeight, getGraphFromEdges, getSubsetMST, ...) uses the weights of the overlay
+     *
+     * @param weights weight of every edge, by edge id (used as is, not copied)
+     * @return graph with the given weights
+     */
+    public CompactGraph withWeights(double[] weights) {
+        if (weights.length != edgeCount()) {
+            throw new IllegalArgumentException("expected " + edgeCount() + " weights, got " + weights.length);
+        }
+        return new CompactGraph(this, weights);
+    }
+
+    /**
+     * @return number of bytes write needs
+     */
+    public long serializedSize() {
+        int n = vertexCount();
+        int m = edgeCount();
+        return 2L * Integer.BYTES + (long) Integer.BYTES * (n + 2L * m + (n + 1) + 4L * m) + (long) Double.BYTES * m;
+    }
+
+    /**
+     * write the arrays of this graph (vertices, edges and adjacency) to a buffer, see read
+     *
+     * @param buffer buffer with at least serializedSize() bytes remaining
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.putInt(vertexCount());
+        buffer.putInt(edgeCount());
+        putInts(buffer, vertexIds);
+        putInts(buffer, edgeSource);
+        putInts(buffer, edgeTarget);
+        buffer.asDoubleBuffer().put(edgeWeight);
+        buffer.position(buffer.position() + Double.BYTES * edgeWeight.length);
+        putInts(buffer, offsets);
+        putInts(buffer, adjTarget);
+        putInts(buffer, adjEdge);
+    }
+
+    /**
+     * read a graph written by write, the adjacency is read as stored instead of being rebuilt
+     *
+     * @param buffer buffer positioned at the start of the graph, positioned after it on return
+     * @return compact graph
+     */
+    public static CompactGraph read(ByteBuffer buffer) {
+        int n = buffer.getInt();
+        int m = buffer.getInt();
+        int[] vertexIds = getInts(buffer, n);
+        int[] edgeSource = getInts(buffer, m);
+        int[] edgeTarget = getInts(buffer, m);
+        double[] edgeWeight = new double[m];
+        buffer.asDoubleBuffer().get(edgeWeight);
+        buffer.position(buffer.position() + Double.BYTES * m);
+        int[] offsets = getInts(buffer, n + 1);
+        int[] adjTarget = getInts(buffer, 2 * m);
+        int[] adjEdge = getInts(buffer, 2 * m);
+        return new CompactGraph(vertexIds, edgeSource, edgeTarget, edgeWeight, offsets, adjTarget, adjEdge);
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + Integer.BYTES * values.length);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + Integer.BYTES * length);
+        return values;
+    }
+
+    public int vertexCount() {
+        return vertexIds.length;
+    }
+
+    public int edgeCount() {
+        return edgeSource.length;
+    }
+
+    /**
+     * @param v vertex index
+     * @return vertex of the JGraphT graph
+     */
+    public int vertexId(int v) {
+        return vertexIds[v];
+    }
+
+    /**
+     * @param vertexId vertex of the JGraphT graph
+     * @return vertex index, -1 if the vertex is not in the graph
+     */
+    public int indexOf(int vertexId) {
+        return vertexId >= 0 && vertexId < indexOf.length ? indexOf[vertexId] : -1;
+    }
+
+    public int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * @param v vertex index
+     * @return first adjacency slot of v
+     */
+    public int slotStart(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * @param v vertex index
+     * @return adjacency slot after the last slot of v
+     */
+    public int slotEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    /**
+     * @param slot adjacency slot
+     * @return neighbour stored in the slot
+     */
+    public int slotTarget(int slot) {
+        return adjTarget[slot];
+    }
+
+    /**
+     * @param slot adjacency slot
+     * @return edge id stored in the slot
+     */
+    public int slotEdge(int slot) {
+        return adjEdge[slot];
+    }
+
+    public int edgeSource(int e) {
+        return edgeSource[e];
+    }
+
+    public int edgeTarget(int e) {
+        return edgeTarget[e];
+    }
+
+    public double edgeWeight(int e) {
+        return edgeWeight[e];
+    }
+
+    /**
+     * @param e edge id
+     * @param v one endpoint of e
+     * @return the other endpoint of e
+     */
+    public int opposite(int e, int v) {
+        return edgeSource[e] == v ? edgeTarget[e] : edgeSource[e];
+    }
+
+    /**
+     * @return copy of the edge weights, indexed by edge id
+     */
+    public double[] copyWeights() {
+        return edgeWeight.clone();
+    }
+
+    /**
+     * @param u vertex index
+     * @param v vertex index
+     * @return id of the edge between u and v, -1 if there is none
+     */
+    public int getEdge(int u, int v) {
+        if (degree(u) > degree(v)) {
+            int temp = u;
+            u = v;
+            v = temp;
+        }
+        for (int s = offsets[u]; s < offsets[u + 1]; s++) {
+            if (adjTarget[s] == v) return adjEdge[s];
+        }
+        return -1;
+    }
+
+    /**
+     * JGraphT view of this graph (the graph it was built from, or a graph built on first use)
+     * !must be treated as read-only
+     *
+     * @return JGraphT graph
+     */
+    public synchronized SimpleWeightedGraph<Integer, DefaultWeightedEdge> asGraph() {
+        if (graph == null) {
+            SimpleWeightedGraph<Integer, DefaultWeightedEdge> newGraph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+            for (int id : vertexIds) {
+                newGraph.addVertex(id);
+            }
+            DefaultWeightedEdge[] edges = new DefaultWeightedEdge[edgeCount()];
+            for (int e = 0; e < edgeCount(); e++) {
+                edges[e] = newGraph.addEdge(vertexIds[edgeSource[e]], vertexIds[edgeTarget[e]]);
+                newGraph.setEdgeWeight(edges[e], edgeWeight[e]);
+            }
+            edgeObjects = edges;
+            graph = newGraph;
+        }
+        return graph;
+    }
+
+    /**
+     * kruskal kernel for the MST of induced subgraphs of this graph (with the weights of this graph)
+     *
+     * @return subset MST kernel
+     */
+    public synchronized SubsetMST getSubsetMST() {
+        if (subsetMST == null) {
+            subsetMST = new SubsetMST(this);
+        }
+        return subsetMST;
+    }
+
+    /**
+     * @param e edge id
+     * @return the edge object of e in asGraph()
+     */
+    public DefaultWeightedEdge edgeObject(int e) {
+        if (edgeObjects == null) asGraph();
+        return edgeObjects[e];
+    }
+
+    /**
+     * construct a new JGraphT graph containing the given edges (with their endpoints and weights)
+     *
+     * @param edgeIds edge ids
+     * @param count   number of edge ids to use from the start of the array
+     * @return graph containing the edges
+     */
+    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> getGraphFromEdges(int[] edgeIds, int count) {
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> newGraph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+        for (int i = 0; i < count; i++) {
+            int e = edgeIds[i];
+            int src = vertexIds[edgeSource[e]];
+            int trg = vertexIds[edgeTarget[e]];
+            newGraph.addVertex(src);
+            newGraph.addVertex(trg);
+            DefaultWeightedEdge newEdge = newGraph.addEdge(src, trg);
+            if (newEdge != null) newGraph.setEdgeWeight(newEdge, edgeWeight[e]);
+        }
+        return newGraph;
+    }
+
+    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> getGraphFromEdges(int[] edgeIds) {
+        return getGraphFromEdges(edgeIds, edgeIds.length);
+    }
+
+    @Override
+    public String toString() {
+        return "CompactGraph{" +
+                "vertices=" + vertexCount() +
+                ", edges=" + edgeCount() +
+                '}';
+    }
+}
@@ -0,0 +1,218 @@
+package utils.graphextensions;
+
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.interfaces.ShortestPathAlgorithm;
+import org.jgrapht.alg.shortestpath.TreeSingleSourcePathsImpl;
+import org.jgrapht.alg.util.Pair;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.GraphWalk;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import java.util.*;
+
+/**
+ * shortest path oracle that replaces the eager all pairs shortest paths (Floyd-Warshall)
+ * * single source rows (distance + predecessor) are computed on demand using dijkstra on a CompactGraph
+ * *        and stored in primitive arrays
+ * * rows of the preferred sources (usually the terminals) are asked for first and are never evicted,
+ * *        other rows are kept in a bounded LRU cache
+ * * the graph is undirected, so a row of either endpoint can answer a query
+ * !the graph is read once at construction, later modifications of the graph are not reflected
+ */
+public class DistanceOracle implements ShortestPathAlgorithm<Integer, DefaultWeightedEdge> {
+
+    // total number of row entries (rows * vertices) the LRU cache is allowed to hold
+    public static final long DEFAULT_CACHE_ENTRIES = 1L << 24;
+
+    private final CompactGraph graph;
+
+    private final Set<Integer> preferred;
+    private final Map<Integer, Row> pinnedRows;
+    private final LinkedHashMap<Integer, Row> cachedRows;
+    private final IndexedMinHeap heap;
+
+    public DistanceOracle(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph) {
+        this(CompactGraph.of(graph), Set.of());
+    }
+
+    public DistanceOracle(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph, Set<Integer> preferred) {
+        this(CompactGraph.of(graph), preferred);
+    }
+
+    public DistanceOracle(CompactGraph graph, Set<Integer> preferred) {
+        this(graph, preferred, DEFAULT_CACHE_ENTRIES);
+    }
+
+    /**
+     * @param graph        graph to answer shortest path queries on
+     * @param preferred    sources whose rows are used first and never evicted (e.g. the terminals)
+     * @param cacheEntries number of row entries the LRU cache may hold for the other sources
+     */
+    public DistanceOracle(CompactGraph graph, Set<Integer> preferred, long cacheEntries) {
+        this.graph = graph;
+        this.preferred = new HashSet<>(preferred);
+        int n = graph.vertexCount();
+        int capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, cacheEntries / Math.max(1, n)));
+        this.pinnedRows = new HashMap<>();
+        this.cachedRows = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Row> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.heap = new IndexedMinHeap(n);
+    }
+
+    @Override
+    public double getPathWeight(Integer source, Integer sink) {
+        int s = index(source);
+        int t = index(sink);
+        if (s == t) return 0d;
+        Row row = rowFor(source, sink);
+        return row.dist[row.source == s ? t : s];
+    }
+
+    @Override
+    public GraphPath<Integer, DefaultWeightedEdge> getPath(Integer source, Integer sink) {
+        int s = index(source);
+        int t = index(sink);
+        if (s == t) return GraphWalk.singletonWalk(graph.asGraph(), source, 0d);
+        Row row = rowFor(source, sink);
+        boolean forward = row.source == s;
+        int end = forward ? t : s;
+        double weight = row.dist[end];
+        if (weight == Double.POSITIVE_INFINITY) return null;
+
+        // walk from the end back to the row source
+        List<Integer> vertexList = new ArrayList<>();
+        List<DefaultWeightedEdge> edgeList = new ArrayList<>();
+        int current = end;
+        vertexList.add(graph.vertexId(current));
+        while (row.pred[current] >= 0) {
+            int predEdge = row.pred[current];
+            edgeList.add(graph.edgeObject(predEdge));
+            current = graph.opposite(predEdge, current);
+            vertexList.add(graph.vertexId(current));
+        }
+        if (forward) {
+            Collections.reverse(vertexList);
+            Collections.reverse(edgeList);
+        }
+        return new GraphWalk<>(graph.asGraph(), source, sink, vertexList, edgeList, weight);
+    }
+
+    @Override
+    public SingleSourcePaths<Integer, DefaultWeightedEdge> getPaths(Integer source) {
+        Row row = row(source);
+        Map<Integer, Pair<Double, DefaultWeightedEdge>> map = new HashMap<>();
+        for (int i = 0; i < graph.vertexCount(); i++) {
+            if (row.dist[i] < Double.POSITIVE_INFINITY) {
+                map.put(graph.vertexId(i), Pair.of(row.dist[i], row.pred[i] >= 0 ? graph.edgeObject(row.pred[i]) : null));
+            }
+        }
+        return new TreeSingleSourcePathsImpl<>(graph.asGraph(), source, map);
+    }
+
+    /**
+     * get the distances from a source to every vertex (indexed by vertex index, see indexOf)
+     * !the returned array is shared with the oracle and must not be modified
+     *
+     * @param source source vertex
+     * @return distances from source
+     */
+    public double[] getDistances(Integer source) {
+        return row(source).dist;
+    }
+
+    /**
+     * @param vertex vertex of the graph
+     * @return index of the vertex in the arrays returned by getDistances
+     */
+    public int indexOf(Integer vertex) {
+        return index(vertex);
+    }
+
+    /**
+     * @param index vertex index
+     * @return vertex with the given index
+     */
+    public Integer getVertex(int index) {
+        return graph.vertexId(index);
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * pick the row that answers the query (source, sink):
+     * an existing row of either endpoint, else the row of a preferred endpoint, else the row of the source
+     */
+    private synchronized Row rowFor(Integer source, Integer sink) {
+        Row row = lookup(source);
+        if (row == null) row = lookup(sink);
+        if (row != null) return row;
+        if (preferred.contains(sink) && !preferred.contains(source)) return row(sink);
+        return row(source);
+    }
+
+    private synchronized Row lookup(Integer source) {
+        Row row = pinnedRows.get(source);
+        return row != null ? row : cachedRows.get(source);
+    }
+
+    private synchronized Row row(Integer source) {
+        Row row = lookup(source);
+        if (row == null) {
+            row = dijkstra(index(source));
+            if (preferred.contains(source)) {
+                pinnedRows.put(source, row);
+            } else {
+                cachedRows.put(source, row);
+            }
+        }
+        return row;
+    }
+
+    private int index(Integer vertex) {
+        int v = graph.indexOf(vertex);
+        if (v < 0) {
+            throw new IllegalArgumentException("Graph must contain the vertex " + vertex + "!");
+        }
+        return v;
+    }
+
+    private Row dijkstra(int source) {
+        int n = graph.vertexCount();
+        double[] dist = new double[n];
+        int[] pred = new int[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(pred, -1);
+        boolean[] settled = new boolean[n];
+        dist[source] = 0d;
+        heap.insertOrDecrease(source, 0d);
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            settled[u] = true;
+            double du = dist[u];
+            for (int s = graph.slotStart(u); s < graph.slotEnd(u); s++) {
+                int v = graph.slotTarget(s);
+                int e = graph.slotEdge(s);
+                double dv = du + graph.edgeWeight(e);
+                if (!settled[v] && dv < dist[v]) {
+                    dist[v] = dv;
+                    pred[v] = e;
+                    heap.insertOrDecrease(v, dv);
+                }
+            }
+        }
+        return new Row(source, dist, pred);
+    }
+
+    /**
+     * single source shortest path tree of the vertex with index source:
+     * distance to every vertex and the id of the last edge on the path (-1 for the source/unreachable)
+     */
+    private record Row(int source, double[] dist, int[] pred) {
+    }
+}
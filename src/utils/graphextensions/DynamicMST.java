@@ -0,0 +1,319 @@
+package utils.graphextensions;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * minimum spanning forest of the subgraph induced by a vertex set that changes one vertex at a time
+ * (vertex insertion and deletion moves of the local searches)
+ * * the forest is kept in a LinkCutTree over the vertex indices of a CompactGraph
+ * * add(v): the edges from v into the set are inserted one by one, an edge links 2 trees or replaces the heaviest
+ * *        edge on the cycle it closes if that one is heavier (cycle property), O(deg(v) log n)
+ * * remove(v): the forest edges of v are cut, which splits its tree into pieces, the pieces are reconnected by kruskal
+ * *        over the edges leaving every piece but the largest (each edge between 2 pieces leaves one of them),
+ * *        no other edge can enter the forest
+ * * a move returns its weight change and can be undone, so neighbourhoods are evaluated as deltas
+ * * the vertices and forest edges are a SolutionState, so weight and validity of a move are O(1)
+ * !the workspace is reused by every move, so an instance must not be shared between threads
+ */
+public class DynamicMST {
+
+    private final CompactGraph graph;
+    private final LinkCutTree forest;
+
+    // vertex set and forest edges
+    private final SolutionState state;
+
+    // undo log: forest changes of the moves (edge id for a link, -1 - edge id for a cut)
+    private int[] log;
+    private int logSize;
+    // moves since the last commit: vertex index (-1 - index for a removal) and log size before the move
+    private int[] moves;
+    private int[] moveStart;
+    private int moveCount;
+    private boolean undoing;
+
+    // remove: piece label of every vertex of the split tree (-1: none), vertices by piece, candidate edges
+    private final int[] piece;
+    private final int[] pieceVertices;
+    private final int[] pieceStart;
+    private final int[] pieceRoots;
+    private final IndexedMinHeap candidates;
+
+    /**
+     * empty vertex set
+     *
+     * @param terminals vertices (not indices) of the terminals, for the validity of the solution
+     */
+    public DynamicMST(CompactGraph graph, Set<Integer> terminals) {
+        this.graph = graph;
+        int n = graph.vertexCount();
+        int m = graph.edgeCount();
+        this.forest = new LinkCutTree(n, m);
+        this.state = new SolutionState(graph, terminals);
+        this.log = new int[16];
+        this.moves = new int[4];
+        this.moveStart = new int[4];
+        this.piece = new int[n];
+        this.pieceVertices = new int[n];
+        this.pieceStart = new int[n + 1];
+        this.pieceRoots = new int[n];
+        this.candidates = new IndexedMinHeap(m);
+        Arrays.fill(piece, -1);
+    }
+
+    /**
+     * replace the vertex set (and forget the moves), the forest is built by the SubsetMST kernel of the graph
+     *
+     * @param vertices vertices of the JGraphT graph
+     */
+    public void reset(Collection<Integer> vertices) {
+        commit();
+        for (int i = 0; i < state.edgeCount(); i++) {
+            int e = state.edge(i);
+            forest.cut(e, graph.edgeSource(e), graph.edgeTarget(e));
+        }
+        state.clear();
+        BitSet mask = new BitSet(graph.vertexCount());
+        for (Integer vertex : vertices) {
+            int v = graph.indexOf(vertex);
+            if (v >= 0 && !state.containsVertex(v)) {
+                state.addVertex(v);
+                mask.set(v);
+            }
+        }
+        int[] edges = new int[Math.max(1, graph.vertexCount())];
+        int count = graph.getSubsetMST().compute(mask, edges);
+        for (int i = 0; i < count; i++) {
+            link(edges[i]);
+        }
+    }
+
+    /**
+     * add a vertex (with its edges to the set) to the set
+     *
+     * @param vertex vertex of the JGraphT graph, not in the set
+     * @return weight change of the forest
+     */
+    public double add(Integer vertex) {
+        int v = graph.indexOf(vertex);
+        assert !state.containsVertex(v);
+        beginMove(v);
+        state.addVertex(v);
+        double delta = 0d;
+        for (int s = graph.slotStart(v); s < graph.slotEnd(v); s++) {
+            int u = graph.slotTarget(s);
+            if (!state.containsVertex(u)) continue;
+            int e = graph.slotEdge(s);
+            if (!forest.connected(v, u)) {
+                delta += link(e);
+            } else {
+                int heaviest = forest.maxEdge(v, u);
+                if (graph.edgeWeight(heaviest) > graph.edgeWeight(e)) {
+                    delta += cut(heaviest);
+                    delta += link(e);
+                }
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * remove a vertex (and its edges) from the set
+     *
+     * @param vertex vertex of the JGraphT graph, in the set
+     * @return weight change of the forest
+     */
+    public double remove(Integer vertex) {
+        int v = graph.indexOf(vertex);
+        assert state.containsVertex(v);
+        beginMove(-1 - v);
+        double delta = 0d;
+        int pieces = 0;
+        for (int s = graph.slotStart(v); s < graph.slotEnd(v); s++) {
+            int e = graph.slotEdge(s);
+            if (state.containsEdge(e)) {
+                delta += cut(e);
+                pieceRoots[pieces++] = graph.slotTarget(s);
+            }
+        }
+        state.removeVertex(v);
+        if (pieces > 1) {
+            delta += reconnect(pieces);
+        }
+        return delta;
+    }
+
+    /**
+     * label the pieces by a bfs over the forest, then kruskal over the edges leaving the small pieces
+     *
+     * @return weight of the replacement edges
+     */
+    private double reconnect(int pieces) {
+        int labeled = 0;
+        int largest = 0;
+        int largestSize = 0;
+        for (int p = 0; p < pieces; p++) {
+            pieceStart[p] = labeled;
+            int root = pieceRoots[p];
+            piece[root] = p;
+            pieceVertices[labeled++] = root;
+            for (int i = pieceStart[p]; i < labeled; i++) {
+                int u = pieceVertices[i];
+                for (int s = graph.slotStart(u); s < graph.slotEnd(u); s++) {
+                    int x = graph.slotTarget(s);
+                    if (state.containsEdge(graph.slotEdge(s)) && piece[x] < 0) {
+                        piece[x] = p;
+                        pieceVertices[labeled++] = x;
+                    }
+                }
+            }
+            if (labeled - pieceStart[p] > largestSize) {
+                largest = p;
+                largestSize = labeled - pieceStart[p];
+            }
+        }
+        pieceStart[pieces] = labeled;
+
+        for (int p = 0; p < pieces; p++) {
+            if (p == largest) continue;
+            for (int i = pieceStart[p]; i < pieceStart[p + 1]; i++) {
+                int u = pieceVertices[i];
+                for (int s = graph.slotStart(u); s < graph.slotEnd(u); s++) {
+                    int q = piece[graph.slotTarget(s)];
+                    // edges between 2 small pieces are seen from both sides
+                    if (q >= 0 && q != p && (q == largest || q > p)) {
+                        int e = graph.slotEdge(s);
+                        candidates.insertOrDecrease(e, graph.edgeWeight(e));
+                    }
+                }
+            }
+        }
+        double delta = 0d;
+        IntUnionFind components = new IntUnionFind(pieces);
+        int unions = 0;
+        while (unions < pieces - 1 && !candidates.isEmpty()) {
+            int e = candidates.poll();
+            if (components.union(piece[graph.edgeSource(e)], piece[graph.edgeTarget(e)])) {
+                delta += link(e);
+                unions++;
+            }
+        }
+        candidates.clear();
+        for (int i = 0; i < labeled; i++) {
+            piece[pieceVertices[i]] = -1;
+        }
+        return delta;
+    }
+
+    /**
+     * undo the last move (since the last commit)
+     */
+    public void undo() {
+        assert moveCount > 0;
+        moveCount--;
+        int start = moveStart[moveCount];
+        int v = moves[moveCount];
+        // a removed vertex comes back before its edges, an added vertex leaves after them
+        if (v < 0) state.addVertex(-1 - v);
+        undoing = true;
+        while (logSize > start) {
+            int op = log[--logSize];
+            if (op >= 0) {
+                cut(op);
+            } else {
+                link(-1 - op);
+            }
+        }
+        undoing = false;
+        if (v >= 0) state.removeVertex(v);
+    }
+
+    /**
+     * keep the moves made so far (they can no longer be undone)
+     */
+    public void commit() {
+        moveCount = 0;
+        logSize = 0;
+    }
+
+    private void beginMove(int move) {
+        if (moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, 2 * moveCount);
+            moveStart = Arrays.copyOf(moveStart, 2 * moveCount);
+        }
+        moves[moveCount] = move;
+        moveStart[moveCount] = logSize;
+        moveCount++;
+    }
+
+    private void record(int op) {
+        if (undoing || moveCount == 0) return;
+        if (logSize == log.length) log = Arrays.copyOf(log, 2 * logSize);
+        log[logSize++] = op;
+    }
+
+    private double link(int e) {
+        double w = graph.edgeWeight(e);
+        forest.link(e, graph.edgeSource(e), graph.edgeTarget(e), w);
+        state.addEdge(e);
+        record(e);
+        return w;
+    }
+
+    private double cut(int e) {
+        double w = graph.edgeWeight(e);
+        forest.cut(e, graph.edgeSource(e), graph.edgeTarget(e));
+        state.removeEdge(e);
+        record(-1 - e);
+        return -w;
+    }
+
+    /**
+     * @return whether the vertex is in the set
+     */
+    public boolean contains(Integer vertex) {
+        int v = graph.indexOf(vertex);
+        return v >= 0 && state.containsVertex(v);
+    }
+
+    /**
+     * @return zobrist hash of the vertex set after adding or removing the vertex (without making the move)
+     */
+    public long vertexHashAfterMove(Integer vertex) {
+        return state.vertexHash() ^ ZobristHash.key(graph.indexOf(vertex));
+    }
+
+    /**
+     * @return the vertices and forest edges (read-only, change them through the moves)
+     */
+    public SolutionState getState() {
+        return state;
+    }
+
+    /**
+     * @return whether the forest is a single tree containing every terminal
+     */
+    public boolean isSteinerTree() {
+        return state.isSteinerTree();
+    }
+
+    /**
+     * @return weight of the forest
+     */
+    public double getWeight() {
+        return state.getWeight();
+    }
+
+    /**
+     * @return new graph containing the edges of the forest (with the weights of the graph)
+     */
+    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> getTree() {
+        return state.getGraph();
+    }
+}
@@ -7,13 +7,13 @@ import org.jgrapht.alg.interfaces.ShortestPathAlgorithm;
 import org.jgrapht.alg.interfaces.SpanningTreeAlgorithm.SpanningTree;
 import org.jgrapht.alg.shortestpath.AStarShortestPath;
 import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
 import org.jgrapht.alg.spanning.KruskalMinimumSpanningTree;
 import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import utils.Utils;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
@@ -83,14 +83,27 @@ public class GraphUtils {
     }
 
     /**
-     * get all pairs shortest paths of graph
+     * get shortest paths oracle of graph (rows are computed on demand, see DistanceOracle)
      *
      * @param graph graph
      * @return paths
      */
-    public static FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> getShortestPaths(
+    public static DistanceOracle getShortestPaths(
             SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph) {
-        return new FloydWarshallShortestPaths<>(graph);
+        return new DistanceOracle(graph);
+    }
+
+    /**
+     * get shortest paths oracle of graph that answers queries from the terminals first
+     *
+     * @param graph     graph
+     * @param terminals vertices whose shortest path trees are kept for the lifetime of the oracle
+     * @return paths
+     */
+    public static DistanceOracle getShortestPaths(
+            SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph,
+            Set<Integer> terminals) {
+        return new DistanceOracle(graph, terminals);
     }
 
     /**
@@ -139,6 +152,32 @@ public class GraphUtils {
         );
     }
 
+    /**
+     * standard cleanup optimization of a construction: MST of the subgraph induced by the vertices
+     * (with the weights of the kernel) without steiner leaves
+     *
+     * @param kernel    subset MST kernel of the graph (e.g. with perturbed weights)
+     * @param base      graph whose weights the tree gets
+     * @param vertices  vertices of the solution
+     * @param terminals terminals
+     * @return new graph containing the tree
+     */
+    public static SimpleWeightedGraph<Integer, DefaultWeightedEdge> cleanup(
+            SubsetMST kernel,
+            CompactGraph base,
+            Collection<Integer> vertices,
+            Collection<Integer> terminals) {
+        BitSet mask = new BitSet(base.vertexCount());
+        vertices.forEach(v -> mask.set(base.indexOf(v)));
+        int[] edges = new int[Math.max(1, mask.cardinality())];
+        int count = kernel.compute(mask, edges);
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> tree = base.getGraphFromEdges(edges, count);
+        // a single vertex has no edges
+        if (count == 0) vertices.forEach(tree::addVertex);
+        removeSteinerLeaves(tree, terminals);
+        return tree;
+    }
+
     /**
      * get graph representing a spanning tree
      *
@@ -0,0 +1,104 @@
+package utils.graphextensions;
+
+import java.util.Arrays;
+
+/**
+ * multi-source dijkstra on a CompactGraph whose source set grows (e.g. the tree of a shortest path heuristic)
+ * * every vertex has the distance to its nearest source and the last edge of the path from it (pred)
+ * * addSource(v): v gets distance 0 and is settled again, only the labels it improves are relaxed (no restart)
+ * * nextTarget: continue the search until the nearest target that is not a source is settled
+ * * the labels are always the lengths of real paths and a vertex is settled again whenever its label improves,
+ * *        so after k additions the labels are the distances to the sources in O(k m log n) (usually far less)
+ * * the arrays and the heap are reused by every run (reset)
+ */
+public class IncrementalDijkstra {
+
+    private final CompactGraph graph;
+    private final double[] dist;
+    private final int[] pred;
+    private final boolean[] source;
+    private final IndexedMinHeap heap;
+
+    /**
+     * no sources, call addSource to start
+     */
+    public IncrementalDijkstra(CompactGraph graph) {
+        this.graph = graph;
+        int n = graph.vertexCount();
+        this.dist = new double[n];
+        this.pred = new int[n];
+        this.source = new boolean[n];
+        this.heap = new IndexedMinHeap(n);
+        reset();
+    }
+
+    /**
+     * remove every source (and label)
+     */
+    public void reset() {
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(pred, -1);
+        Arrays.fill(source, false);
+        heap.clear();
+    }
+
+    /**
+     * @param v vertex index that becomes a source (distance 0)
+     */
+    public void addSource(int v) {
+        if (source[v]) return;
+        source[v] = true;
+        dist[v] = 0d;
+        pred[v] = -1;
+        heap.insertOrDecrease(v, 0d);
+    }
+
+    /**
+     * settle vertices until the nearest target that is not a source is settled
+     *
+     * @param isTarget targets, by vertex index
+     * @return nearest target, -1 if no target can be reached
+     */
+    public int nextTarget(boolean[] isTarget) {
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double du = dist[u];
+            for (int slot = graph.slotStart(u); slot < graph.slotEnd(u); slot++) {
+                int v = graph.slotTarget(slot);
+                int e = graph.slotEdge(slot);
+                double dv = du + graph.edgeWeight(e);
+                if (dv < dist[v]) {
+                    dist[v] = dv;
+                    pred[v] = e;
+                    heap.insertOrDecrease(v, dv);
+                }
+            }
+            if (isTarget[u] && !source[u]) return u;
+        }
+        return -1;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public boolean isSource(int v) {
+        return source[v];
+    }
+
+    /**
+     * @param v vertex index
+     * @return distance from the nearest source to v (an upper bound until v is settled, infinity if not reached)
+     */
+    public double distance(int v) {
+        return dist[v];
+    }
+
+    /**
+     * @param v vertex index
+     * @return last edge on the shortest path from the sources to v, -1 for the sources and unreachable vertices
+     */
+    public int pred(int v) {
+        return pred[v];
+    }
+}
@@ -0,0 +1,135 @@
+package utils.graphextensions;
+
+import java.util.Arrays;
+
+/**
+ * binary min heap over the integers 0..capacity-1 with a double key per element
+ * supports decrease-key, which makes it suitable for dijkstra on primitive graphs
+ * (no boxing, no node objects, the arrays can be reused by calling clear)
+ */
+public class IndexedMinHeap {
+    // heap position -> element
+    private final int[] heap;
+    // element -> heap position (-1 if the element is not in the heap)
+    private final int[] pos;
+    // element -> key
+    private final double[] key;
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.pos = new int[capacity];
+        this.key = new double[capacity];
+        Arrays.fill(this.pos, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int element) {
+        return pos[element] >= 0;
+    }
+
+    public double getKey(int element) {
+        return key[element];
+    }
+
+    /**
+     * @return key of the minimum element (the heap must not be empty)
+     */
+    public double peekKey() {
+        return key[heap[0]];
+    }
+
+    /**
+     * insert the element, or lower its key if it is already contained and the new key is smaller
+     *
+     * @param element element to insert
+     * @param newKey  key of the element
+     * @return whether the heap changed
+     */
+    public boolean insertOrDecrease(int element, double newKey) {
+        int p = pos[element];
+        if (p < 0) {
+            key[element] = newKey;
+            heap[size] = element;
+            pos[element] = size;
+            siftUp(size++);
+            return true;
+        }
+        if (newKey < key[element]) {
+            key[element] = newKey;
+            siftUp(p);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * remove and return the element with the smallest key
+     *
+     * @return element with the smallest key
+     */
+    public int poll() {
+        int min = heap[0];
+        pos[min] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            pos[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    /**
+     * remove all elements, only touching the elements still in the heap
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            pos[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int p) {
+        int element = heap[p];
+        double k = key[element];
+        while (p > 0) {
+            int parent = (p - 1) >>> 1;
+            int parentElement = heap[parent];
+            if (key[parentElement] <= k) break;
+            heap[p] = parentElement;
+            pos[parentElement] = p;
+            p = parent;
+        }
+        heap[p] = element;
+        pos[element] = p;
+    }
+
+    private void siftDown(int p) {
+        int element = heap[p];
+        double k = key[element];
+        int half = size >>> 1;
+        while (p < half) {
+            int child = 2 * p + 1;
+            int right = child + 1;
+            if (right < size && key[heap[right]] < key[heap[child]]) {
+                child = right;
+            }
+            int childElement = heap[child];
+            if (k <= key[childElement]) break;
+            heap[p] = childElement;
+            pos[childElement] = p;
+            p = child;
+        }
+        heap[p] = element;
+        pos[element] = p;
+    }
+}
@@ -0,0 +1,66 @@
+package utils.graphextensions;
+
+/**
+ * union-find over the integers 0..size-1 (union by size, path halving)
+ * primitive replacement of JGraphT's UnionFind for kruskal style loops on a CompactGraph,
+ * reset makes it reusable without allocating
+ */
+public class IntUnionFind {
+    private final int[] parent;
+    private final int[] size;
+    private int count;
+
+    public IntUnionFind(int size) {
+        this.parent = new int[size];
+        this.size = new int[size];
+        reset();
+    }
+
+    /**
+     * make every element its own set again
+     */
+    public void reset() {
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+        count = parent.length;
+    }
+
+    public int find(int element) {
+        while (parent[element] != element) {
+            parent[element] = parent[parent[element]];
+            element = parent[element];
+        }
+        return element;
+    }
+
+    /**
+     * @return whether the elements were in different sets (and are merged now)
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) return false;
+        if (size[rootA] < size[rootB]) {
+            int temp = rootA;
+            rootA = rootB;
+            rootB = temp;
+        }
+        parent[rootB] = rootA;
+        size[rootA] += size[rootB];
+        count--;
+        return true;
+    }
+
+    public boolean connected(int a, int b) {
+        return find(a) == find(b);
+    }
+
+    /**
+     * @return number of sets
+     */
+    public int numberOfSets() {
+        return count;
+    }
+}
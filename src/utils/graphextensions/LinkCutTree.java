@@ -0,0 +1,201 @@
+package utils.graphextensions;
+
+import java.util.Arrays;
+
+/**
+ * link-cut tree (Sleator & Tarjan) over the vertices and edges of a CompactGraph
+ * maintains a forest under link and cut and answers "heaviest edge on the path between u and v",
+ * every operation takes O(log n) amortized time
+ * * every vertex and every edge is a node: an edge (u, v) is linked as u - e - v, so the weight lives on the edge node
+ * * the preferred paths are splay trees over arrays (left, right, parent), with lazy reversal for evert (make root)
+ * !linking 2 vertices that are already connected (or cutting an edge that isn't linked) corrupts the forest,
+ * check with connected first
+ */
+public class LinkCutTree {
+    private final int vertexCount;
+    private final int[] left;
+    private final int[] right;
+    // splay parent, or path-parent if the node is the root of its splay tree (-1: none)
+    private final int[] parent;
+    private final boolean[] flip;
+    private final double[] value;
+    // node with the largest value in the splay subtree
+    private final int[] max;
+    private final int[] stack;
+
+    /**
+     * forest of isolated vertices
+     *
+     * @param vertexCount number of vertices (indices 0..vertexCount-1)
+     * @param edgeCount   number of edges (ids 0..edgeCount-1)
+     */
+    public LinkCutTree(int vertexCount, int edgeCount) {
+        this.vertexCount = vertexCount;
+        int size = vertexCount + edgeCount;
+        this.left = new int[size];
+        this.right = new int[size];
+        this.parent = new int[size];
+        this.flip = new boolean[size];
+        this.value = new double[size];
+        this.max = new int[size];
+        this.stack = new int[size];
+        Arrays.fill(left, -1);
+        Arrays.fill(right, -1);
+        Arrays.fill(parent, -1);
+        Arrays.fill(value, Double.NEGATIVE_INFINITY);
+        for (int x = 0; x < size; x++) {
+            max[x] = x;
+        }
+    }
+
+    /**
+     * add edge e between the vertices u and v (which must not be connected)
+     */
+    public void link(int e, int u, int v, double weight) {
+        int node = vertexCount + e;
+        value[node] = weight;
+        max[node] = node;
+        link(u, node);
+        link(node, v);
+    }
+
+    /**
+     * remove edge e between the vertices u and v (which must be linked)
+     */
+    public void cut(int e, int u, int v) {
+        int node = vertexCount + e;
+        cut(u, node);
+        cut(node, v);
+    }
+
+    /**
+     * @return whether vertices u and v are in the same tree
+     */
+    public boolean connected(int u, int v) {
+        return u == v || findRoot(u) == findRoot(v);
+    }
+
+    /**
+     * @return id of the heaviest edge on the path between vertices u and v,
+     * -1 if u == v or u and v are not connected
+     */
+    public int maxEdge(int u, int v) {
+        if (u == v || !connected(u, v)) return -1;
+        makeRoot(u);
+        access(v);
+        int node = max[v];
+        return node < vertexCount ? -1 : node - vertexCount;
+    }
+
+    private void link(int x, int y) {
+        makeRoot(x);
+        parent[x] = y;
+    }
+
+    private void cut(int x, int y) {
+        makeRoot(x);
+        access(y);
+        // the path is x - y, so x is the whole left subtree of y
+        left[y] = -1;
+        parent[x] = -1;
+        update(y);
+    }
+
+    private void makeRoot(int x) {
+        access(x);
+        flip[x] = !flip[x];
+    }
+
+    private int findRoot(int x) {
+        access(x);
+        push(x);
+        while (left[x] >= 0) {
+            x = left[x];
+            push(x);
+        }
+        splay(x);
+        return x;
+    }
+
+    /**
+     * make the path from the root to x preferred, x ends as the root of its splay tree without right child
+     */
+    private void access(int x) {
+        int last = -1;
+        for (int y = x; y >= 0; y = parent[y]) {
+            splay(y);
+            right[y] = last;
+            update(y);
+            last = y;
+        }
+        splay(x);
+    }
+
+    private boolean isRoot(int x) {
+        int p = parent[x];
+        return p < 0 || (left[p] != x && right[p] != x);
+    }
+
+    private void update(int x) {
+        int m = x;
+        if (left[x] >= 0 && value[max[left[x]]] > value[m]) m = max[left[x]];
+        if (right[x] >= 0 && value[max[right[x]]] > value[m]) m = max[right[x]];
+        max[x] = m;
+    }
+
+    private void push(int x) {
+        if (flip[x]) {
+            int temp = left[x];
+            left[x] = right[x];
+            right[x] = temp;
+            if (left[x] >= 0) flip[left[x]] = !flip[left[x]];
+            if (right[x] >= 0) flip[right[x]] = !flip[right[x]];
+            flip[x] = false;
+        }
+    }
+
+    private void rotate(int x) {
+        int p = parent[x];
+        int g = parent[p];
+        boolean rootP = isRoot(p);
+        if (left[p] == x) {
+            left[p] = right[x];
+            if (right[x] >= 0) parent[right[x]] = p;
+            right[x] = p;
+        } else {
+            right[p] = left[x];
+            if (left[x] >= 0) parent[left[x]] = p;
+            left[x] = p;
+        }
+        parent[p] = x;
+        parent[x] = g;
+        if (!rootP) {
+            if (left[g] == p) left[g] = x;
+            else right[g] = x;
+        }
+        update(p);
+        update(x);
+    }
+
+    private void splay(int x) {
+        // push the pending reversals from the root of the splay tree down to x
+        int size = 0;
+        int y = x;
+        stack[size++] = y;
+        while (!isRoot(y)) {
+            y = parent[y];
+            stack[size++] = y;
+        }
+        while (size > 0) {
+            push(stack[--size]);
+        }
+        while (!isRoot(x)) {
+            int p = parent[x];
+            if (!isRoot(p)) {
+                int g = parent[p];
+                rotate((left[g] == p) == (left[p] == x) ? p : x);
+            }
+            rotate(x);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package utils.graphextensions;
+
+import java.util.Arrays;
+
+/**
+ * multi-source dijkstra on a CompactGraph
+ * every vertex gets its nearest source (base), the distance to it and the last edge of the shortest path from it,
+ * together this is a shortest path forest rooted at the sources (the voronoi regions of the sources)
+ * * vertices and edges are the indices of the compact graph
+ * * ties between sources are broken by the order of the sources, so the result is deterministic
+ * * the arrays and the heap are reused by every run
+ */
+public class MultiSourceDijkstra {
+
+    private final CompactGraph graph;
+    private final double[] dist;
+    private final int[] base;
+    private final int[] pred;
+    private final IndexedMinHeap heap;
+
+    public MultiSourceDijkstra(CompactGraph graph) {
+        this.graph = graph;
+        int n = graph.vertexCount();
+        this.dist = new double[n];
+        this.base = new int[n];
+        this.pred = new int[n];
+        this.heap = new IndexedMinHeap(n);
+    }
+
+    /**
+     * compute the shortest path forest of the sources
+     *
+     * @param sources vertex indices of the sources
+     */
+    public void run(int[] sources) {
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(base, -1);
+        Arrays.fill(pred, -1);
+        for (int s : sources) {
+            if (base[s] >= 0) continue;
+            dist[s] = 0d;
+            base[s] = s;
+            heap.insertOrDecrease(s, 0d);
+        }
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double du = dist[u];
+            for (int slot = graph.slotStart(u); slot < graph.slotEnd(u); slot++) {
+                int v = graph.slotTarget(slot);
+                int e = graph.slotEdge(slot);
+                double dv = du + graph.edgeWeight(e);
+                if (dv < dist[v]) {
+                    dist[v] = dv;
+                    base[v] = base[u];
+                    pred[v] = e;
+                    heap.insertOrDecrease(v, dv);
+                }
+            }
+        }
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @param v vertex index
+     * @return distance from v to its nearest source (infinity if no source is reachable)
+     */
+    public double distance(int v) {
+        return dist[v];
+    }
+
+    /**
+     * @param v vertex index
+     * @return nearest source of v, -1 if no source is reachable
+     */
+    public int base(int v) {
+        return base[v];
+    }
+
+    /**
+     * @param v vertex index
+     * @return last edge on the shortest path from the base to v, -1 for the sources and unreachable vertices
+     */
+    public int pred(int v) {
+        return pred[v];
+    }
+}
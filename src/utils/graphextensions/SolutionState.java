@@ -0,0 +1,219 @@
+package utils.graphextensions;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * vertices and edges of a solution (a forest in a CompactGraph) with its objective and validity kept up to date,
+ * so checking a move costs O(1) instead of GraphUtils.getWeight and GraphUtils.verifySteinerTree
+ * * total weight (compensated sum, so long move sequences don't drift)
+ * * number of terminals covered
+ * * number of components: vertices - edges, because the edges never contain a cycle
+ * * zobrist hashes of the vertex set and of the edge set (see ZobristHash)
+ * * the vertices and edges are kept in arrays with their positions, adding or removing one is O(1)
+ * !the state doesn't check that an added edge keeps the forest acyclic, the caller (e.g. DynamicMST) does
+ */
+public class SolutionState {
+
+    private final CompactGraph graph;
+    private final boolean[] isTerminal;
+    private final int terminalCount;
+
+    private final boolean[] inSolution;
+    private final int[] vertices;
+    private final int[] vertexPosition;
+    private int vertexCount;
+    private final boolean[] inForest;
+    private final int[] edges;
+    private final int[] edgePosition;
+    private int edgeCount;
+
+    private int coveredTerminals;
+    private long vertexHash;
+    private long hash;
+    private double weight;
+    private double compensation;
+
+    /**
+     * empty solution
+     *
+     * @param terminals vertices (not indices) of the terminals
+     */
+    public SolutionState(CompactGraph graph, Set<Integer> terminals) {
+        this.graph = graph;
+        int n = graph.vertexCount();
+        this.isTerminal = new boolean[n];
+        terminals.forEach(t -> isTerminal[graph.indexOf(t)] = true);
+        this.terminalCount = terminals.size();
+        this.inSolution = new boolean[n];
+        this.vertices = new int[n];
+        this.vertexPosition = new int[n];
+        this.inForest = new boolean[graph.edgeCount()];
+        this.edges = new int[Math.max(1, n)];
+        this.edgePosition = new int[graph.edgeCount()];
+    }
+
+    /**
+     * @param v vertex index, not in the solution
+     */
+    public void addVertex(int v) {
+        assert !inSolution[v];
+        inSolution[v] = true;
+        vertexPosition[v] = vertexCount;
+        vertices[vertexCount++] = v;
+        vertexHash ^= ZobristHash.key(v);
+        if (isTerminal[v]) coveredTerminals++;
+    }
+
+    /**
+     * @param v vertex index, in the solution and without edges
+     */
+    public void removeVertex(int v) {
+        assert inSolution[v];
+        inSolution[v] = false;
+        int last = vertices[--vertexCount];
+        vertices[vertexPosition[v]] = last;
+        vertexPosition[last] = vertexPosition[v];
+        vertexHash ^= ZobristHash.key(v);
+        if (isTerminal[v]) coveredTerminals--;
+    }
+
+    /**
+     * @param e edge id, both endpoints in the solution and in different components
+     */
+    public void addEdge(int e) {
+        assert !inForest[e] && inSolution[graph.edgeSource(e)] && inSolution[graph.edgeTarget(e)];
+        inForest[e] = true;
+        edgePosition[e] = edgeCount;
+        edges[edgeCount++] = e;
+        hash ^= ZobristHash.key(e);
+        add(graph.edgeWeight(e));
+    }
+
+    /**
+     * @param e edge id, in the solution
+     */
+    public void removeEdge(int e) {
+        assert inForest[e];
+        inForest[e] = false;
+        int last = edges[--edgeCount];
+        edges[edgePosition[e]] = last;
+        edgePosition[last] = edgePosition[e];
+        hash ^= ZobristHash.key(e);
+        add(-graph.edgeWeight(e));
+    }
+
+    /**
+     * remove every edge and vertex
+     */
+    public void clear() {
+        for (int i = 0; i < vertexCount; i++) {
+            inSolution[vertices[i]] = false;
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            inForest[edges[i]] = false;
+        }
+        vertexCount = 0;
+        edgeCount = 0;
+        coveredTerminals = 0;
+        vertexHash = 0L;
+        hash = 0L;
+        weight = 0d;
+        compensation = 0d;
+    }
+
+    /**
+     * neumaier summation
+     */
+    private void add(double value) {
+        double sum = weight + value;
+        if (Math.abs(weight) >= Math.abs(value)) {
+            compensation += (weight - sum) + value;
+        } else {
+            compensation += (value - sum) + weight;
+        }
+        weight = sum;
+    }
+
+    public boolean containsVertex(int v) {
+        return inSolution[v];
+    }
+
+    public boolean containsEdge(int e) {
+        return inForest[e];
+    }
+
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return index of the i-th vertex of the solution (the order changes when vertices are removed)
+     */
+    public int vertex(int i) {
+        return vertices[i];
+    }
+
+    /**
+     * @return id of the i-th edge of the solution (the order changes when edges are removed)
+     */
+    public int edge(int i) {
+        return edges[i];
+    }
+
+    public double getWeight() {
+        return weight + compensation;
+    }
+
+    /**
+     * @return zobrist hash of the vertex set (the set with vertex v added or removed: vertexHash() ^ ZobristHash.key(v))
+     */
+    public long vertexHash() {
+        return vertexHash;
+    }
+
+    /**
+     * @return zobrist hash of the edge set
+     */
+    public long edgeHash() {
+        return hash;
+    }
+
+    /**
+     * @return ids of the edges of the solution, sorted
+     */
+    public int[] sortedEdges() {
+        int[] sorted = Arrays.copyOf(edges, edgeCount);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    public int coveredTerminals() {
+        return coveredTerminals;
+    }
+
+    public int componentCount() {
+        return vertexCount - edgeCount;
+    }
+
+    /**
+     * @return whether the solution is a single tree containing every terminal
+     */
+    public boolean isSteinerTree() {
+        return coveredTerminals == terminalCount && componentCount() == 1;
+    }
+
+    /**
+     * @return new graph containing the edges of the solution (with the weights of the graph)
+     */
+    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> getGraph() {
+        return graph.getGraphFromEdges(edges, edgeCount);
+    }
+}
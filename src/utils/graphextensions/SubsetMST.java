@@ -0,0 +1,119 @@
+package utils.graphextensions;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * kruskal kernel for minimum spanning trees of induced subgraphs of one CompactGraph
+ * * the edges are sorted by weight once (ties by edge id), the subgraph is a vertex mask (BitSet of vertex indices)
+ * *        over the immutable graph, so nothing is copied per subgraph
+ * * the MST of a subset is one pass over the sorted edges, skipping edges with an endpoint outside the mask,
+ * *        it stops as soon as the mask is spanned
+ * * the union-find and buffers are reused per thread, so one kernel can be shared between threads
+ */
+public final class SubsetMST {
+
+    private final CompactGraph graph;
+    private final double[] weights;
+    private final int[] sortedEdges;
+    private final ThreadLocal<Workspace> workspace;
+
+    /**
+     * kernel using the weights of the graph
+     */
+    public SubsetMST(CompactGraph graph) {
+        this(graph, graph.copyWeights());
+    }
+
+    /**
+     * @param weights weight of every edge, by edge id (e.g. perturbed weights)
+     */
+    public SubsetMST(CompactGraph graph, double[] weights) {
+        this.graph = graph;
+        this.weights = weights;
+        this.sortedEdges = IntStream.range(0, graph.edgeCount())
+                .boxed()
+                .sorted(Comparator.<Integer>comparingDouble(e -> weights[e]).thenComparingInt(e -> e))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.workspace = ThreadLocal.withInitial(() -> new Workspace(graph.vertexCount()));
+    }
+
+    /**
+     * minimum spanning tree (forest if the subgraph is not connected) of the subgraph induced by the mask
+     *
+     * @param vertices mask of vertex indices
+     * @param edges    buffer for the edge ids of the MST (at least as long as the number of vertices in the mask)
+     * @return number of edges written to the buffer
+     */
+    public int compute(BitSet vertices, int[] edges) {
+        IntUnionFind components = workspace.get().components;
+        components.reset();
+        int size = vertices.cardinality();
+        int count = 0;
+        for (int i = 0; i < sortedEdges.length && count < size - 1; i++) {
+            int e = sortedEdges[i];
+            int src = graph.edgeSource(e);
+            int trg = graph.edgeTarget(e);
+            if (vertices.get(src) && vertices.get(trg) && components.union(src, trg)) {
+                edges[count++] = e;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * minimum spanning tree of the subgraph induced by the vertices (see compute)
+     *
+     * @param vertices vertices of the JGraphT graph
+     * @return new graph containing the edges of the MST (with the weights of this kernel)
+     */
+    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> getMST(Collection<Integer> vertices) {
+        Workspace ws = workspace.get();
+        for (Integer vertex : vertices) {
+            int v = graph.indexOf(vertex);
+            if (v >= 0) ws.mask.set(v);
+        }
+        int count = compute(ws.mask, ws.edges);
+        ws.mask.clear();
+        return getGraph(ws.edges, count);
+    }
+
+    /**
+     * @return new graph containing the edges (with the weights of this kernel)
+     */
+    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> getGraph(int[] edges, int count) {
+        SimpleWeightedGraph<Integer, DefaultWeightedEdge> newGraph = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+        for (int i = 0; i < count; i++) {
+            int e = edges[i];
+            Integer src = graph.vertexId(graph.edgeSource(e));
+            Integer trg = graph.vertexId(graph.edgeTarget(e));
+            newGraph.addVertex(src);
+            newGraph.addVertex(trg);
+            DefaultWeightedEdge newEdge = newGraph.addEdge(src, trg);
+            if (newEdge != null) newGraph.setEdgeWeight(newEdge, weights[e]);
+        }
+        return newGraph;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    private static final class Workspace {
+        private final IntUnionFind components;
+        private final BitSet mask;
+        private final int[] edges;
+
+        private Workspace(int vertexCount) {
+            this.components = new IntUnionFind(vertexCount);
+            this.mask = new BitSet(vertexCount);
+            this.edges = new int[Math.max(0, vertexCount - 1)];
+        }
+    }
+}
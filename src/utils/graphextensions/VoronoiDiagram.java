@@ -1,216 +1,291 @@
 package utils.graphextensions;
 
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
-import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * voronoi diagram for local search
- * !contains some bugs
+ * every vertex belongs to the region of its nearest base, computed by one multi-source dijkstra on a CompactGraph
+ * * base, pred (last edge of the shortest path from the base) and vdist are primitive arrays over the vertex indices
+ * * an edge is a boundary edge if its endpoints are in different regions,
+ * *        the boundary path of edge (u, v) is path(base(u), u) + (u, v) + path(v, base(v))
+ * * convertToBases repairs the diagram locally: only the regions of removed bases are re-settled
+ * *        (and the vertices that are closer to an added base), the bases to remove and add are given as indices
+ * * the labels a repair changes are logged, so undoConversion restores the diagram in O(changed vertices)
  */
 public class VoronoiDiagram {
-    private Map<Integer, Integer> base;
-    private Map<Integer, Integer> predecessor;
-    private Map<Integer, Double> vdist;
-    private Map<Integer, Set<DefaultWeightedEdge>> boundaries;
-    private Map<DefaultWeightedEdge, Pair<Integer, Integer>> inverseBoundaries;
-    private final FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> shortestPaths;
-    private SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph;
-    private Set<Integer> bases;
+    private final CompactGraph graph;
+    private final int[] base;
+    private final int[] pred;
+    private final double[] vdist;
+    private final boolean[] isBase;
+    private final IndexedMinHeap heap;
+    private final Set<Integer> bases = new HashSet<>();
+    // vertices reset by the last repair (buffer reused by every repair)
+    private final int[] outdated;
+    private int outdatedCount;
+    // labels of the vertices changed by the last repair, before the repair (undo log)
+    private final boolean[] logged;
+    private final int[] logVertex;
+    private final int[] logBase;
+    private final int[] logPred;
+    private final double[] logVdist;
+    private final boolean[] logIsBase;
+    private int logCount;
 
     public VoronoiDiagram(SimpleWeightedGraph<Integer, DefaultWeightedEdge> vGraph, Set<Integer> vBases) {
+        this(CompactGraph.of(vGraph), vBases);
+    }
+
+    public VoronoiDiagram(CompactGraph vGraph, Set<Integer> vBases) {
         this.graph = vGraph;
-        this.bases = new HashSet<>(vBases);
-        this.base = new HashMap<>();
-        this.predecessor = new HashMap<>();
-        this.vdist = new HashMap<>();
-        this.boundaries = new HashMap<>();
-        this.inverseBoundaries = new HashMap<>();
-
-        shortestPaths = GraphUtils.getShortestPaths(graph);
-
-        fullVoronoi(bases);
-    }
-
-    public void convertToBases(Set<Integer> newBases) {
-        Set<Integer> outdatedBases = new HashSet<>(this.bases);
-        outdatedBases.removeAll(newBases);
-        Set<Integer> outdatedVertices = this.graph.vertexSet().stream().filter(v -> outdatedBases.contains(
-                this.base.get(v))).collect(Collectors.toSet());
-        voronoiCalc(outdatedVertices, newBases);
-        this.bases = new HashSet<>(newBases);
-        updateBoundaries(outdatedVertices);
-    }
-
-    public void fullVoronoi(Set<Integer> bases) {
-        voronoiCalc(this.graph.vertexSet(), bases);
-        this.bases = new HashSet<>(bases);
-        fullBoundaries();
-    }
-
-    private void voronoiCalc(Set<Integer> vertices, Set<Integer> bases) {
-        for (Integer v : vertices) {
-            GraphPath<Integer, DefaultWeightedEdge> vPath = null;
-            double vWeight = Double.POSITIVE_INFINITY;
-            int vBase = -1;
-            for (Integer basis : bases) {
-                GraphPath<Integer, DefaultWeightedEdge> path = shortestPaths.getPath(v, basis);
-                double weight = path.getWeight();
-                if (weight < vWeight) {
-                    vPath = path;
-                    vBase = basis;
-                    vWeight = weight;
+        int n = graph.vertexCount();
+        this.base = new int[n];
+        this.pred = new int[n];
+        this.vdist = new double[n];
+        this.isBase = new boolean[n];
+        this.heap = new IndexedMinHeap(n);
+        this.outdated = new int[n];
+        this.logged = new boolean[n];
+        this.logVertex = new int[n];
+        this.logBase = new int[n];
+        this.logPred = new int[n];
+        this.logVdist = new double[n];
+        this.logIsBase = new boolean[n];
+        fullVoronoi(vBases);
+    }
+
+    /**
+     * recompute the whole diagram for the bases
+     *
+     * @param newBases vertices (not indices) of the bases
+     */
+    public void fullVoronoi(Set<Integer> newBases) {
+        Arrays.fill(base, -1);
+        Arrays.fill(pred, -1);
+        Arrays.fill(vdist, Double.POSITIVE_INFINITY);
+        Arrays.fill(isBase, false);
+        bases.clear();
+        bases.addAll(newBases);
+        for (Integer b : newBases) {
+            int index = graph.indexOf(b);
+            isBase[index] = true;
+            settleBase(index);
+        }
+        settle();
+        clearLog();
+    }
+
+    /**
+     * change the bases and repair the diagram:
+     * * the regions of removed bases are collected by a walk from those bases (a region is connected by its pred edges),
+     * *        reset and seeded from their neighbours in the remaining regions
+     * * added bases are seeded with distance 0
+     * * one dijkstra from the seeds only visits vertices whose distance improves,
+     * *        the rest of the diagram is still a valid shortest path forest and is not touched
+     * so a repair costs O(r log n) for the r vertices (and their edges) it touches, not O(n)
+     *
+     * @param removed indices of the bases that are removed
+     * @param added   indices of the vertices that become bases
+     * @return indices of the vertices in the regions of the removed bases (only their distance can have changed,
+     * unless bases were added)
+     */
+    public int[] convertToBases(int[] removed, int[] added) {
+        clearLog();
+        // reset the regions of removed bases
+        outdatedCount = 0;
+        for (int b : removed) {
+            if (!isBase[b]) continue;
+            log(b);
+            isBase[b] = false;
+            bases.remove(graph.vertexId(b));
+            int first = outdatedCount;
+            reset(b);
+            for (int i = first; i < outdatedCount; i++) {
+                int v = outdated[i];
+                for (int slot = graph.slotStart(v); slot < graph.slotEnd(v); slot++) {
+                    int u = graph.slotTarget(slot);
+                    if (base[u] == b) reset(u);
                 }
             }
-            base.put(v, vBase);
-            if (vPath != null) {
-                List<Integer> vertexList = vPath.getVertexList();
-                vdist.put(v, vPath.getWeight());
-                if (vertexList.size() > 1) {
-                    predecessor.put(v, vertexList.get(1));
-                } else {
-                    predecessor.put(v, v);
+        }
+        // seed the reset vertices from the boundary of the remaining regions
+        for (int i = 0; i < outdatedCount; i++) {
+            int v = outdated[i];
+            for (int slot = graph.slotStart(v); slot < graph.slotEnd(v); slot++) {
+                int u = graph.slotTarget(slot);
+                if (base[u] < 0) continue;
+                int e = graph.slotEdge(slot);
+                double dv = vdist[u] + graph.edgeWeight(e);
+                if (dv < vdist[v]) {
+                    vdist[v] = dv;
+                    base[v] = base[u];
+                    pred[v] = e;
+                    heap.insertOrDecrease(v, dv);
                 }
             }
         }
-    }
-
-    private void updateBoundaries(Set<Integer> outdatedBases) {
-        Set<DefaultWeightedEdge> edges = outdatedBases
-                .stream()
-                .map(this.graph::edgesOf)
-                .flatMap(Collection::stream)
-                .collect(Collectors.toSet());
-        for (DefaultWeightedEdge edge : edges) {
-            Pair<Integer, Integer> pair = inverseBoundaries.get(edge);
-            if (pair != null) { // not every edge is a boundary edge, so it can be null
-                boundaries.get(pair.getFirst()).remove(edge);
-                boundaries.get(pair.getSecond()).remove(edge);
-            }
+        // seed the added bases
+        for (int v : added) {
+            if (isBase[v]) continue;
+            log(v);
+            isBase[v] = true;
+            bases.add(graph.vertexId(v));
+            settleBase(v);
         }
-        outdatedBases.forEach(boundaries::remove);
-
-        boundariesCalc(edges);
-    }
-
-    private void fullBoundaries() {
-        boundariesCalc(this.graph.edgeSet());
+        settle();
+        return Arrays.copyOf(outdated, outdatedCount);
     }
 
-    private void boundariesCalc(Set<DefaultWeightedEdge> edges) {
-        for (DefaultWeightedEdge edge : edges) {
-            Integer src = this.graph.getEdgeSource(edge);
-            Integer trg = this.graph.getEdgeTarget(edge);
-            Integer srcBase = base.get(src);
-            Integer trgBase = base.get(trg);
-            if (!srcBase.equals(trgBase)) {
-                if (!boundaries.containsKey(srcBase))
-                    boundaries.put(srcBase, new HashSet<>());
-                boundaries.get(srcBase).add(edge);
-                if (!boundaries.containsKey(trgBase))
-                    boundaries.put(trgBase, new HashSet<>());
-                boundaries.get(trgBase).add(edge);
-                inverseBoundaries.put(edge, new Pair<>(srcBase, trgBase));
+    /**
+     * undo the last convertToBases (the diagram is as it was before it, including ties between bases)
+     * only the vertices changed by that repair are restored
+     */
+    public void undoConversion() {
+        for (int i = 0; i < logCount; i++) {
+            int v = logVertex[i];
+            base[v] = logBase[i];
+            pred[v] = logPred[i];
+            vdist[v] = logVdist[i];
+            if (isBase[v] != logIsBase[i]) {
+                isBase[v] = logIsBase[i];
+                if (isBase[v]) bases.add(graph.vertexId(v));
+                else bases.remove(graph.vertexId(v));
             }
         }
+        clearLog();
     }
 
-    public Map<Integer, Integer> getBase() {
-        return base;
-    }
-
-    public void setBase(Map<Integer, Integer> base) {
-        this.base = base;
-    }
-
-    public Map<Integer, Integer> getPredecessor() {
-        return predecessor;
+    /**
+     * remember the labels of v before the first change of this repair
+     */
+    private void log(int v) {
+        if (logged[v]) return;
+        logged[v] = true;
+        logVertex[logCount] = v;
+        logBase[logCount] = base[v];
+        logPred[logCount] = pred[v];
+        logVdist[logCount] = vdist[v];
+        logIsBase[logCount++] = isBase[v];
     }
 
-    public void setPredecessor(Map<Integer, Integer> predecessor) {
-        this.predecessor = predecessor;
+    private void clearLog() {
+        for (int i = 0; i < logCount; i++) {
+            logged[logVertex[i]] = false;
+        }
+        logCount = 0;
     }
 
-    public Map<Integer, Double> getVdist() {
-        return vdist;
+    /**
+     * remove v from its region (the region of a removed base) and remember it as outdated
+     */
+    private void reset(int v) {
+        log(v);
+        base[v] = -1;
+        pred[v] = -1;
+        vdist[v] = Double.POSITIVE_INFINITY;
+        outdated[outdatedCount++] = v;
     }
 
-    public void setVdist(Map<Integer, Double> vdist) {
-        this.vdist = vdist;
+    private void settleBase(int b) {
+        log(b);
+        vdist[b] = 0d;
+        base[b] = b;
+        pred[b] = -1;
+        heap.insertOrDecrease(b, 0d);
     }
 
-    public SimpleWeightedGraph<Integer, DefaultWeightedEdge> getGraph() {
-        return graph;
+    /**
+     * dijkstra from the vertices in the heap, a vertex is only relaxed if its distance strictly improves
+     */
+    private void settle() {
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double du = vdist[u];
+            for (int slot = graph.slotStart(u); slot < graph.slotEnd(u); slot++) {
+                int v = graph.slotTarget(slot);
+                int e = graph.slotEdge(slot);
+                double dv = du + graph.edgeWeight(e);
+                if (dv < vdist[v]) {
+                    log(v);
+                    vdist[v] = dv;
+                    base[v] = base[u];
+                    pred[v] = e;
+                    heap.insertOrDecrease(v, dv);
+                }
+            }
+        }
     }
 
-    public void setGraph(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph) {
-        this.graph = graph;
+    /**
+     * @param v vertex index
+     * @return index of the base of v, -1 if no base is reachable
+     */
+    public int base(int v) {
+        return base[v];
     }
 
-    public Set<Integer> getBases() {
-        return bases;
+    /**
+     * @param v vertex index
+     * @return last edge on the shortest path from the base to v, -1 for the bases and unreachable vertices
+     */
+    public int pred(int v) {
+        return pred[v];
     }
 
-    public void setBases(Set<Integer> bases) {
-        this.bases = bases;
+    /**
+     * @param v vertex index
+     * @return distance from v to its base
+     */
+    public double vdist(int v) {
+        return vdist[v];
     }
 
-    public Map<Integer, Set<DefaultWeightedEdge>> getBoundaries() {
-        return boundaries;
+    /**
+     * @param v vertex index
+     * @return whether v is a base
+     */
+    public boolean isBase(int v) {
+        return isBase[v];
     }
 
-    public void setBoundaries(Map<Integer, Set<DefaultWeightedEdge>> boundaries) {
-        this.boundaries = boundaries;
+    /**
+     * @param e edge index
+     * @return whether the endpoints of e are in different regions
+     */
+    public boolean isBoundaryEdge(int e) {
+        int baseSource = base[graph.edgeSource(e)];
+        int baseTarget = base[graph.edgeTarget(e)];
+        return baseSource != baseTarget && baseSource >= 0 && baseTarget >= 0;
     }
 
-    public Map<DefaultWeightedEdge, Pair<Integer, Integer>> getInverseBoundaries() {
-        return inverseBoundaries;
+    /**
+     * @param e edge index
+     * @return weight of the boundary path of e (base(u) -> u -> v -> base(v))
+     */
+    public double boundaryWeight(int e) {
+        return vdist[graph.edgeSource(e)] + graph.edgeWeight(e) + vdist[graph.edgeTarget(e)];
     }
 
-    public void setInverseBoundaries(Map<DefaultWeightedEdge, Pair<Integer, Integer>> inverseBoundaries) {
-        this.inverseBoundaries = inverseBoundaries;
+    public CompactGraph getGraph() {
+        return graph;
     }
 
-    public FloydWarshallShortestPaths<Integer, DefaultWeightedEdge> getShortestPaths() {
-        return shortestPaths;
+    public Set<Integer> getBases() {
+        return bases;
     }
 
     @Override
     public String toString() {
         return "VoronoiDiagram{" +
-                "\n\tbase=" + base +
-                ",\n\tpredecessor=" + predecessor +
-                ",\n\tvdist=" + vdist +
-                ",\n\tboundaries=" + boundaries +
-                ",\n\tinverseBoundaries=" + inverseBoundaries +
-                ",\n\tshortestPaths=" + shortestPaths +
-                ",\n\tgraph=" + graph +
+                "\n\tbase=" + Arrays.toString(base) +
+                ",\n\tpred=" + Arrays.toString(pred) +
+                ",\n\tvdist=" + Arrays.toString(vdist) +
                 ",\n\tbases=" + bases +
                 "\n}";
     }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        VoronoiDiagram that = (VoronoiDiagram) o;
-        return Objects.equals(base, that.base)
-                && Objects.equals(predecessor, that.predecessor)
-                && Objects.equals(vdist, that.vdist)
-                && Objects.equals(boundaries, that.boundaries)
-                && Objects.equals(inverseBoundaries, that.inverseBoundaries)
-                && Objects.equals(shortestPaths, that.shortestPaths)
-                && Objects.equals(graph, that.graph)
-                && Objects.equals(bases, that.bases);
-    }
-
-    @Override
-    public int hashCode() {
-        return Objects.hash(base, predecessor, vdist, boundaries, inverseBoundaries, shortestPaths, graph, bases);
-    }
 }
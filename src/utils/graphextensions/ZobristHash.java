@@ -0,0 +1,39 @@
+package utils.graphextensions;
+
+/**
+ * zobrist hash of edge (or vertex) sets: the xor of a random 64 bit key per element
+ * * adding or removing an element is one xor, so a hash can be kept up to date with the set (see SolutionState)
+ * * the key of an element is the splitmix64 mix of its id, so there is no table to build or share between threads
+ * !equal hashes don't prove equal sets, compare the sets when the hashes are equal
+ */
+public final class ZobristHash {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private ZobristHash() {
+    }
+
+    /**
+     * @param id element id (e.g. edge id of a CompactGraph)
+     * @return random key of the element
+     */
+    public static long key(int id) {
+        long z = (id + 1L) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @param ids   element ids (without duplicates)
+     * @param count number of ids to hash
+     * @return hash of the set of the first count ids
+     */
+    public static long of(int[] ids, int count) {
+        long hash = 0L;
+        for (int i = 0; i < count; i++) {
+            hash ^= key(ids[i]);
+        }
+        return hash;
+    }
+}
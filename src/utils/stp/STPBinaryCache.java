@@ -0,0 +1,202 @@
+package utils.stp;
+
+import org.jgrapht.alg.util.Pair;
+import utils.graphextensions.CompactGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * binary cache of parsed .stp files (.stpb, written next to the .stp file)
+ * * layout: header (magic, version, modification time and size of the .stp file), comment section,
+ * *        CSR arrays of the graph (see CompactGraph.write), terminals and coordinates
+ * * the cache is invalidated when the .stp file changes (modification time or size differ),
+ * *        the header is read without mapping the file, so a stale cache is never mapped and can be replaced
+ * * a valid cache is memory mapped and its arrays are bulk copied onto the heap (CompactGraph keeps int[]/double[]),
+ * *        so a load is a copy of the arrays instead of a parse, the mapping itself is not kept
+ * * the cache is written to a temporary file first and moved into place, so a partially written cache is never read
+ * !failing to write the cache (e.g. read-only directory) only costs the parse, it is reported on System.err
+ */
+public class STPBinaryCache {
+
+    private static final int MAGIC = 0x53545042; // "STPB"
+    private static final int VERSION = 1;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES;
+
+    private STPBinaryCache() {
+    }
+
+    /**
+     * load a .stp file, from its binary cache if the cache is valid, else by parsing it (and writing the cache)
+     *
+     * @param stpFile .stp file
+     * @return parsed graph
+     * @throws Exception the .stp file has an invalid format
+     */
+    public static STPGraph load(File stpFile) throws Exception {
+        File cacheFile = getCacheFile(stpFile);
+        STPGraph stpGraph = read(stpFile, cacheFile);
+        if (stpGraph == null) {
+            stpGraph = new STPFileParser(stpFile.getPath()).readFromSTPFile();
+            write(stpFile, cacheFile, stpGraph);
+        }
+        return stpGraph;
+    }
+
+    /**
+     * @param stpFile .stp file
+     * @return cache file of the .stp file (e.g. e01.stp -> e01.stpb)
+     */
+    public static File getCacheFile(File stpFile) {
+        return new File(stpFile.getPath() + "b");
+    }
+
+    /**
+     * @return graph read from the cache, null if there is no valid cache for the .stp file
+     */
+    private static STPGraph read(File stpFile, File cacheFile) {
+        if (!cacheFile.isFile()) return null;
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            // check the header before mapping, a mapping can keep the file from being replaced until it is collected
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) return null;
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getLong() != stpFile.lastModified() || header.getLong() != stpFile.length()) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, channel.size() - HEADER_SIZE);
+            STPGraph stpGraph = new STPGraph();
+            stpGraph.setName(getString(buffer));
+            long date = buffer.getLong();
+            if (date != NO_DATE) stpGraph.setDate(new Date(date));
+            stpGraph.setCreator(getString(buffer));
+            stpGraph.setRemark(getString(buffer));
+            stpGraph.setProblem(getString(buffer));
+
+            if (buffer.get() != 0) {
+                stpGraph.setCompactGraph(CompactGraph.read(buffer));
+            }
+            int terminalCount = buffer.getInt();
+            if (terminalCount >= 0) {
+                Set<Integer> terminals = new HashSet<>();
+                for (int i = 0; i < terminalCount; i++) {
+                    terminals.add(buffer.getInt());
+                }
+                stpGraph.setTerminals(terminals);
+            }
+            int coordinateCount = buffer.getInt();
+            if (coordinateCount >= 0) {
+                Map<Integer, Pair<Integer, Integer>> coordinates = new HashMap<>();
+                for (int i = 0; i < coordinateCount; i++) {
+                    coordinates.put(buffer.getInt(), new Pair<>(buffer.getInt(), buffer.getInt()));
+                }
+                stpGraph.setCoordinates(coordinates);
+            }
+            return stpGraph;
+        } catch (IOException | RuntimeException e) {
+            // unreadable or truncated cache: parse the .stp file instead
+            return null;
+        }
+    }
+
+    private static void write(File stpFile, File cacheFile, STPGraph stpGraph) {
+        CompactGraph graph = stpGraph.getCompactGraph();
+        byte[][] strings = {
+                getBytes(stpGraph.getName()),
+                getBytes(stpGraph.getCreator()),
+                getBytes(stpGraph.getRemark()),
+                getBytes(stpGraph.getProblem())
+        };
+        Set<Integer> terminals = stpGraph.getTerminals();
+        Map<Integer, Pair<Integer, Integer>> coordinates = stpGraph.getCoordinates();
+
+        long size = HEADER_SIZE + Long.BYTES + 1 + 2L * Integer.BYTES;
+        for (byte[] string : strings) {
+            size += Integer.BYTES + (string == null ? 0 : string.length);
+        }
+        size += graph == null ? 0 : graph.serializedSize();
+        size += terminals == null ? 0 : (long) Integer.BYTES * terminals.size();
+        size += coordinates == null ? 0 : 3L * Integer.BYTES * coordinates.size();
+        if (size > Integer.MAX_VALUE) {
+            System.err.println("binary cache not written, " + cacheFile + " would be larger than 2GB");
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(stpFile.lastModified());
+        buffer.putLong(stpFile.length());
+        putString(buffer, strings[0]);
+        buffer.putLong(stpGraph.getDate() == null ? NO_DATE : stpGraph.getDate().getTime());
+        putString(buffer, strings[1]);
+        putString(buffer, strings[2]);
+        putString(buffer, strings[3]);
+
+        buffer.put((byte) (graph == null ? 0 : 1));
+        if (graph != null) graph.write(buffer);
+        buffer.putInt(terminals == null ? -1 : terminals.size());
+        if (terminals != null) terminals.forEach(buffer::putInt);
+        buffer.putInt(coordinates == null ? -1 : coordinates.size());
+        if (coordinates != null) {
+            coordinates.forEach((vertex, coordinate) -> {
+                buffer.putInt(vertex);
+                buffer.putInt(coordinate.getFirst());
+                buffer.putInt(coordinate.getSecond());
+            });
+        }
+        buffer.flip();
+
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(cacheFile.toPath().toAbsolutePath().getParent(), cacheFile.getName(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("binary cache not written: " + cacheFile + " (" + e + ")");
+            try {
+                if (tempFile != null) Files.deleteIfExists(tempFile);
+            } catch (IOException e1) {
+                System.err.println("temporary cache file not removed: " + tempFile + " (" + e1 + ")");
+            }
+        }
+    }
+
+    private static byte[] getBytes(String string) {
+        return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // strings are stored as length (-1 for null) followed by the UTF-8 bytes
+    private static void putString(ByteBuffer buffer, byte[] string) {
+        if (string == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(string.length);
+            buffer.put(string);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,15 +1,17 @@
 package utils.stp;
 
 import org.jgrapht.alg.util.Pair;
-import org.jgrapht.graph.DefaultWeightedEdge;
-import org.jgrapht.graph.SimpleWeightedGraph;
-import org.jgrapht.util.SupplierUtil;
+import utils.graphextensions.CompactGraph;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Scanner;
 import java.util.Set;
 
 /**
@@ -18,45 +20,40 @@ import java.util.Set;
 
 /**
  * parser for the STP graph format
+ * * the file is memory mapped and tokenized on byte level
+ * * E, T and DD lines are parsed straight from the buffer into primitive arrays (no String per line),
+ * *        the graph is built from these arrays (see CompactGraph)
+ * * text is only decoded for section names and the values of the comment section
  */
 public class STPFileParser {
 
-    private Scanner scanner;
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte COMMENT = '#';
+
+    private MappedByteBuffer buffer;
+    // start of the next line
+    private int position;
+    // bounds of the current line (without line terminator and # comment) and the position of the tokenizer in it
+    private int lineEnd;
+    private int cursor;
 
     private STPGraph stpGraph;
 
     public STPFileParser(String path) {
-        try {
-            scanner = new Scanner(new File(path));
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
             stpGraph = new STPGraph();
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private String stripQuotes(String string) {
-        return string.replace("\"", "");
-    }
-
-    private String getNextLine() {
-        return scanner.nextLine().split("#")[0];
-    }
-
-    private String[] getTokens(String string) {
-        return string.split("\s+");
-    }
-
-    private String[] getTokens(String string, int arraySize) {
-        return string.split("\s+", arraySize);
-    }
-
     public STPGraph readFromSTPFile() throws Exception {
-        while (scanner.hasNext()) {
-            String line = getNextLine();
-            String[] tokens = getTokens(line);
-
-            if ("section".equalsIgnoreCase(tokens[0])) {
-                parseSection(tokens[1]);
+        while (nextLine()) {
+            if (nextTokenIs("section")) {
+                parseSection(nextToken());
             }
         }
         return stpGraph;
@@ -74,67 +71,76 @@ public class STPFileParser {
     }
 
     private void parseCommentSection() throws Exception {
-        while (scanner.hasNext()) {
-            String[] tokens = getTokens(getNextLine(), 2);
-
-            String token = tokens[0].toLowerCase();
+        while (nextLine()) {
+            String token = nextToken().toLowerCase();
             if (token.equals("end")) {
                 return;
             }
-            String value = stripQuotes(tokens[1]);
+            if (token.isEmpty()) {
+                continue;
+            }
+            String value = stripQuotes(restOfLine());
             switch (token) {
                 case "name" -> stpGraph.setName(value);
                 case "date" -> stpGraph.setDate(value);
                 case "creator" -> stpGraph.setCreator(value);
                 case "remark" -> stpGraph.setRemark(value);
                 case "problem" -> stpGraph.setProblem(value);
-                default -> throw new Exception("unknown keyword: " + tokens[1]);
+                default -> throw new Exception("unknown keyword: " + value);
             }
         }
     }
 
     private void parseGraph() {
-        SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph = new SimpleWeightedGraph<>(
-                SupplierUtil.createIntegerSupplier(1),
-                SupplierUtil.createDefaultWeightedEdgeSupplier());
+        int nodes = 0;
+        int edges = 0;
+        int[] sources = new int[16];
+        int[] targets = new int[16];
+        double[] weights = new double[16];
 
-        while (scanner.hasNext()) {
-            String[] tokens = getTokens(getNextLine());
-
-            switch (tokens[0].toLowerCase()) {
-                case "end" -> {
-                    this.stpGraph.setGraph(graph);
-                    return;
-                }
-                case "nodes" -> {
-                    // call addVertex *Nodes* times
-                    // the vertex ids are handled automatically by the vertexSupplier (starting from 1)
-                    for (int i = 0; i < Integer.parseInt(tokens[1]); i++) {
-                        graph.addVertex();
-                    }
+        while (nextLine()) {
+            if (nextTokenIs("e")) {
+                // add an edge and its weight
+                if (edges == sources.length) {
+                    int capacity = 2 * edges;
+                    sources = Arrays.copyOf(sources, capacity);
+                    targets = Arrays.copyOf(targets, capacity);
+                    weights = Arrays.copyOf(weights, capacity);
                 }
-                case "e" -> {
-                    // add an edge and set the weight
-                    DefaultWeightedEdge edge = graph.addEdge(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]));
-                    graph.setEdgeWeight(edge, Double.parseDouble(tokens[3]));
+                sources[edges] = nextInt();
+                targets[edges] = nextInt();
+                weights[edges++] = nextDouble();
+            } else if (nextTokenIs("end")) {
+                // the vertices are 1..nodes
+                int[] vertices = new int[nodes];
+                for (int i = 0; i < nodes; i++) {
+                    vertices[i] = i + 1;
                 }
-                case "obstacles", "edges", "arcs", "a" -> {/*not implemented*/}
+                stpGraph.setCompactGraph(CompactGraph.of(vertices,
+                        Arrays.copyOf(sources, edges), Arrays.copyOf(targets, edges), Arrays.copyOf(weights, edges)));
+                return;
+            } else if (nextTokenIs("nodes")) {
+                nodes = nextInt();
+            } else if (nextTokenIs("edges")) {
+                int capacity = Math.max(nextInt(), sources.length);
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                weights = Arrays.copyOf(weights, capacity);
             }
+            // obstacles, arcs, a: not implemented
         }
     }
 
     private void parseTerminals() {
         Set<Integer> terminals = new HashSet<>();
-        while (scanner.hasNext()) {
-            String[] tokens = getTokens(getNextLine());
-            switch (tokens[0].toLowerCase()) {
-                case "end" -> {
-                    this.stpGraph.setTerminals(terminals);
-                    return;
-                }
-                case "terminals" -> {/*not implemented*/}
-                case "t" -> terminals.add(Integer.parseInt(tokens[1]));
+        while (nextLine()) {
+            if (nextTokenIs("t")) {
+                terminals.add(nextInt());
+            } else if (nextTokenIs("end")) {
+                this.stpGraph.setTerminals(terminals);
+                return;
             }
+            // terminals: not implemented
         }
     }
 
@@ -144,17 +150,146 @@ public class STPFileParser {
 
     private void parseCoordinates() {
         HashMap<Integer, Pair<Integer, Integer>> coordinates = new HashMap<>();
-        while (scanner.hasNext()) {
-            String[] tokens = getTokens(getNextLine());
-            switch (tokens[0].toLowerCase()) {
-                case "end" -> {
-                    this.stpGraph.setCoordinates(coordinates);
-                    return;
-                }
-                case "dd" -> coordinates.put(
-                        Integer.parseInt(tokens[1]), new Pair<>(Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]))
-                );
+        while (nextLine()) {
+            if (nextTokenIs("dd")) {
+                int vertex = nextInt();
+                int x = nextInt();
+                int y = nextInt();
+                coordinates.put(vertex, new Pair<>(x, y));
+            } else if (nextTokenIs("end")) {
+                this.stpGraph.setCoordinates(coordinates);
+                return;
             }
         }
     }
+
+    /*
+     * byte level tokenizer
+     */
+
+    /**
+     * move to the next line
+     *
+     * @return whether there was a next line
+     */
+    private boolean nextLine() {
+        int limit = buffer.limit();
+        if (position >= limit) return false;
+        int end = position;
+        int contentEnd = -1;
+        while (end < limit && buffer.get(end) != LF) {
+            if (contentEnd < 0 && buffer.get(end) == COMMENT) contentEnd = end;
+            end++;
+        }
+        if (contentEnd < 0) {
+            contentEnd = end > position && buffer.get(end - 1) == CR ? end - 1 : end;
+        }
+        cursor = position;
+        lineEnd = contentEnd;
+        position = end + 1;
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == CR || b == '\f' || b == 0x0B;
+    }
+
+    private void skipSpaces() {
+        while (cursor < lineEnd && isSpace(buffer.get(cursor))) cursor++;
+    }
+
+    private int tokenEnd() {
+        int end = cursor;
+        while (end < lineEnd && !isSpace(buffer.get(end))) end++;
+        return end;
+    }
+
+    /**
+     * compare the next token with a lowercase keyword (ignoring case), without consuming it
+     */
+    private boolean tokenIs(String keyword) {
+        int end = tokenEnd();
+        if (end - cursor != keyword.length()) return false;
+        for (int i = 0; i < keyword.length(); i++) {
+            if (Character.toLowerCase(buffer.get(cursor + i)) != keyword.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * compare the first token of the line with a lowercase keyword, consuming it if it matches
+     */
+    private boolean nextTokenIs(String keyword) {
+        skipSpaces();
+        if (!tokenIs(keyword)) return false;
+        cursor += keyword.length();
+        return true;
+    }
+
+    private String nextToken() {
+        skipSpaces();
+        int end = tokenEnd();
+        String token = decode(cursor, end);
+        cursor = end;
+        return token;
+    }
+
+    private String restOfLine() {
+        skipSpaces();
+        String rest = decode(cursor, lineEnd);
+        cursor = lineEnd;
+        return rest;
+    }
+
+    private int nextInt() {
+        skipSpaces();
+        boolean negative = false;
+        if (cursor < lineEnd && (buffer.get(cursor) == '-' || buffer.get(cursor) == '+')) {
+            negative = buffer.get(cursor++) == '-';
+        }
+        int start = cursor;
+        int value = 0;
+        while (cursor < lineEnd) {
+            int digit = buffer.get(cursor) - '0';
+            if (digit < 0 || digit > 9) break;
+            value = 10 * value + digit;
+            cursor++;
+        }
+        if (cursor == start || (cursor < lineEnd && !isSpace(buffer.get(cursor)))) {
+            throw new NumberFormatException("invalid integer: " + decode(start, tokenEnd()));
+        }
+        return negative ? -value : value;
+    }
+
+    private double nextDouble() {
+        skipSpaces();
+        int start = cursor;
+        int end = tokenEnd();
+        // whole numbers (the common case) are exact as a long, anything else is parsed by Double.parseDouble
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i++) == '-';
+        }
+        long value = 0;
+        boolean whole = i < end && end - i <= 15;
+        for (; whole && i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) whole = false;
+            else value = 10 * value + digit;
+        }
+        cursor = end;
+        if (whole) return negative ? -value : value;
+        return Double.parseDouble(decode(start, end));
+    }
+
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String stripQuotes(String string) {
+        return string.replace("\"", "");
+    }
 }
@@ -3,6 +3,7 @@ package utils.stp;
 import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
+import utils.graphextensions.CompactGraph;
 
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -21,6 +22,7 @@ public class STPGraph {
     private String problem;
 
     private SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph;
+    private CompactGraph compactGraph;
     private Set<Integer> terminals;
     private Map<Integer, Pair<Integer, Integer>> coordinates;
 
@@ -44,6 +46,10 @@ public class STPGraph {
         }
     }
 
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
     public String getCreator() {
         return creator;
     }
@@ -69,11 +75,35 @@ public class STPGraph {
     }
 
     public SimpleWeightedGraph<Integer, DefaultWeightedEdge> getGraph() {
+        if (graph == null && compactGraph != null) {
+            graph = compactGraph.asGraph();
+        }
         return graph;
     }
 
     public void setGraph(SimpleWeightedGraph<Integer, DefaultWeightedEdge> graph) {
         this.graph = graph;
+        this.compactGraph = null;
+    }
+
+    /**
+     * set the graph by its compact representation (the JGraphT graph is built on first use)
+     *
+     * @param compactGraph compact graph
+     */
+    public void setCompactGraph(CompactGraph compactGraph) {
+        this.compactGraph = compactGraph;
+        this.graph = null;
+    }
+
+    /**
+     * @return compact representation of the graph (built on first use)
+     */
+    public CompactGraph getCompactGraph() {
+        if (compactGraph == null && graph != null) {
+            compactGraph = CompactGraph.of(graph);
+        }
+        return compactGraph;
     }
 
     public Set<Integer> getTerminals() {
@@ -100,7 +130,7 @@ public class STPGraph {
                 ", creator='" + creator + '\'' +
                 ", remark='" + remark + '\'' +
                 ", problem='" + problem + '\'' +
-                ", graph=" + graph +
+                ", graph=" + getGraph() +
                 ", terminals=" + terminals +
                 '}';
     }